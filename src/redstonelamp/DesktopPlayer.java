@@ -109,6 +109,8 @@ public class DesktopPlayer extends Human implements Player{
                     return;
                 }
                 uuid = response.uuid;
+                username = lsp.name;
+                server.getPlayerRegistry().onLogin(this);
 
                 SetCompressionPacket scp = new SetCompressionPacket();
                 //scp.threshold = 512; //TODO: Get threshold from YAML config
@@ -192,7 +194,7 @@ public class DesktopPlayer extends Human implements Player{
 
     @Override
     public String getName() {
-        return null;
+        return username;
     }
 
     @Override
@@ -1,6 +1,7 @@
 package redstonelamp;
 
-import redstonelamp.event.Event;
+import redstonelamp.event.EventHandler;
+import redstonelamp.event.EventPriority;
 import redstonelamp.event.Listener;
 import redstonelamp.event.player.PlayerJoinEvent;
 import redstonelamp.event.player.PlayerQuitEvent;
@@ -19,6 +20,7 @@ public class InternalListener implements Listener{
         this.server = server;
     }
 
+    @EventHandler(priority = EventPriority.MONITOR)
     public void onPlayerQuit(PlayerQuitEvent evt){
         server.getNetwork().setName(server.getMotd()); //Update the player list
 
@@ -30,11 +32,8 @@ public class InternalListener implements Listener{
         }
     }
 
+    @EventHandler(priority = EventPriority.MONITOR)
     public void onPlayerJoin(PlayerJoinEvent evt){
         server.getNetwork().setName(server.getMotd()); //Update the player list
     }
-
-    @Override
-    public void onEvent(Event event) {
-    }
 }
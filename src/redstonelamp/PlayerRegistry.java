@@ -0,0 +1,105 @@
+package redstonelamp;
+
+import org.apache.mina.core.session.IoSession;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the connected players by session identifier, MINA session, name and UUID.
+ * Lookups are O(1) and lock free, iteration goes over an immutable snapshot (in join order) that is replaced on every change.
+ */
+public class PlayerRegistry {
+    private final Map<String, Player> byIdentifier = new ConcurrentHashMap<>();
+    private final Map<IoSession, Player> bySession = new ConcurrentHashMap<>();
+    private final Map<String, Player> byName = new ConcurrentHashMap<>();
+    private final Map<UUID, Player> byUUID = new ConcurrentHashMap<>();
+    private volatile List<Player> snapshot = Collections.emptyList();
+
+    /**
+     * Adds a newly connected player. Name and UUID are indexed later, see <code>onLogin()</code>.
+     * @param player The Player.
+     */
+    public synchronized void add(Player player){
+        Player old = byIdentifier.put(player.getIdentifier(), player);
+        if(player instanceof DesktopPlayer){
+            bySession.put(((DesktopPlayer) player).getSession(), player);
+        }
+        List<Player> players = new ArrayList<>(snapshot);
+        players.remove(old);
+        players.add(player);
+        snapshot = Collections.unmodifiableList(players);
+    }
+
+    /**
+     * Indexes a player by name and UUID, once they are known.
+     * @param player The Player.
+     */
+    public synchronized void onLogin(Player player){
+        if(player.getName() != null){
+            byName.put(player.getName().toLowerCase(), player);
+        }
+        if(player.getUUID() != null){
+            byUUID.put(player.getUUID(), player);
+        }
+    }
+
+    /**
+     * Removes a player from every index.
+     * @param player The Player.
+     */
+    public synchronized void remove(Player player){
+        byIdentifier.remove(player.getIdentifier(), player);
+        if(player instanceof DesktopPlayer){
+            bySession.remove(((DesktopPlayer) player).getSession(), player);
+        }
+        if(player.getName() != null){
+            byName.remove(player.getName().toLowerCase(), player);
+        }
+        if(player.getUUID() != null){
+            byUUID.remove(player.getUUID(), player);
+        }
+        if(snapshot.contains(player)){
+            List<Player> players = new ArrayList<>(snapshot);
+            players.remove(player);
+            snapshot = Collections.unmodifiableList(players);
+        }
+    }
+
+    public Player getByIdentifier(String identifier){
+        return byIdentifier.get(identifier);
+    }
+
+    public Player getBySession(IoSession session){
+        return bySession.get(session);
+    }
+
+    /**
+     * Returns the logged in player with this name, ignoring case.
+     * @param name The name, may be null.
+     * @return The Player, or null.
+     */
+    public Player getByName(String name){
+        return name == null ? null : byName.get(name.toLowerCase());
+    }
+
+    public Player getByUUID(UUID uuid){
+        return uuid == null ? null : byUUID.get(uuid);
+    }
+
+    /**
+     * Returns an immutable snapshot of the connected players, safe to iterate from any thread.
+     * @return List<Player>
+     */
+    public List<Player> getPlayers(){
+        return snapshot;
+    }
+
+    public int size(){
+        return snapshot.size();
+    }
+}
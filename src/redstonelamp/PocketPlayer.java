@@ -4,6 +4,7 @@ import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import redstonelamp.entity.EntityMetadata;
 import redstonelamp.entity.Human;
@@ -22,6 +23,7 @@ import redstonelamp.level.Chunk;
 import redstonelamp.level.location.Location;
 import redstonelamp.math.Vector3;
 import redstonelamp.network.JRakLibInterface;
+import redstonelamp.network.OutboundQueue;
 import redstonelamp.network.PENetworkInfo;
 import redstonelamp.network.packet.*;
 import redstonelamp.security.BanSecurity;
@@ -56,6 +58,8 @@ public class PocketPlayer extends Human implements Player{
     private JRakLibInterface rakLibInterface;
     
     private BanSecurity ban_security;
+    private CompletableFuture<Void> chatChain = CompletableFuture.completedFuture(null);
+    private final OutboundQueue outboundQueue = new OutboundQueue();
 
     public PocketPlayer(Server server, JRakLibInterface rakLibInterface, String identifier, String address, int port, long clientId){
         super(server.getNextEntityId());
@@ -100,21 +104,23 @@ public class PocketPlayer extends Human implements Player{
             return;
         }
 
-        if(packet.getBuffer()[0] == PENetworkInfo.BATCH_PACKET){
+        if(packet.getPID() == PENetworkInfo.BATCH_PACKET){
             server.getNetwork().processBatch((BatchPacket) packet, this);
             return;
         }
 
-        DataPacketReceiveEvent evt = new DataPacketReceiveEvent(packet, this);
-        server.throwEvent(evt);
-        if(evt.isCanceled())
-            return;
+        if(server.getEventManager().hasListeners(DataPacketReceiveEvent.class)){
+            DataPacketReceiveEvent evt = new DataPacketReceiveEvent(packet, this);
+            server.throwEvent(evt);
+            if(evt.isCanceled())
+                return;
+        }
 
         if(packet instanceof UnknownDataPacket && server.isDebugMode())
             server.getLogger().debug("Unknown Packet: 0x"+String.format("%02X", packet.getBuffer()[0]));
 
 
-        switch (packet.getBuffer()[0]){
+        switch (packet.getPID()){
 
             case PENetworkInfo.LOGIN_PACKET:
                 if(loggedIn){
@@ -165,25 +171,25 @@ public class PocketPlayer extends Human implements Player{
                 skin = lp.skin;
                 isSlim = lp.slim;
 
-                for(Player player : server.getOnlinePlayers()){
-                    if(player.getName().equalsIgnoreCase(username) && player.isConnected() && player.isLoggedIn()){
-                        if(!player.kick("logged in from another location", false)){
-                            player.close(" left the game", "logged in from another location", true);
-                        }
-                        return;
+                Player existing = server.getPlayerByName(username);
+                if(existing != null && existing != this && existing.isConnected() && existing.isLoggedIn()){
+                    if(!existing.kick("logged in from another location", false)){
+                        existing.close(" left the game", "logged in from another location", true);
                     }
+                    return;
                 }
 
                 dbEntry = server.getPlayerDatabase().getEntry(uuid);
                 loadPlayerData();
 
                 loggedIn = true;
+                server.getPlayerRegistry().onLogin(this);
 
                 //setLocation(new Location(128, 2, 128, server.getMainLevel()));
 
                 sendLoginPackets();
 
-                RedstoneLamp.getAsync().submit(() -> server.getMainLevel().queueLoginChunks(this));
+                server.getMainLevel().queueLoginChunks(this);
                 break;
 
             case PENetworkInfo.MOVE_PLAYER_PACKET:
@@ -207,30 +213,12 @@ public class PocketPlayer extends Human implements Player{
 
             case PENetworkInfo.TEXT_PACKET:
                 TextPacket tp = (TextPacket) packet;
-                PlayerChatEvent pce = new PlayerChatEvent(this, tp.message);
                 switch (tp.type){
                     case TextPacket.TYPE_RAW:
-                    	if(!tp.message.toLowerCase().startsWith("/")) {
-                    		server.throwEvent(pce);
-                    		if(!pce.isCanceled()) {
-                    			server.getLogger().info(pce.getFormat());
-                    			for(Player p : pce.getRecipents()) {
-                    				p.sendMessage(pce.getFormat());
-                    			}
-                    		}	
-                    	} else
-                    		server.getCommandManager().getCommandExecutor().executeCommand(tp.message, this);
-                    break;
                     case TextPacket.TYPE_CHAT:
-                    	if(!tp.message.toLowerCase().startsWith("/")) {
-                    		server.throwEvent(pce);
-                    		if(!pce.isCanceled()) {
-                    			server.getLogger().info(pce.getFormat());
-                    			for(Player p : pce.getRecipents()) {
-                    				p.sendMessage(pce.getFormat());
-                    			}
-                    		}	
-                    	} else
+                    	if(!tp.message.toLowerCase().startsWith("/"))
+                    		chat(tp.message);
+                    	else
                     		server.getCommandManager().getCommandExecutor().executeCommand(tp.message, this);
                     break;
                 }
@@ -243,18 +231,7 @@ public class PocketPlayer extends Human implements Player{
                 //TODO: break level blocks.
                 //TODO: Check survival, add/remove inventory etc.
                 RemoveBlockPacket rbp = (RemoveBlockPacket) packet;
-                UpdateBlockPacket ubp = new UpdateBlockPacket();
-
-                UpdateBlockPacket.Record r = new UpdateBlockPacket.Record();
-                r.x = rbp.x;
-                r.y = rbp.y;
-                r.z = rbp.z;
-                r.blockId = ItemValues.AIR; //TODO
-                r.blockData = 0;
-                r.flags = UpdateBlockPacket.FLAG_ALL_PRIORITY;
-
-                ubp.records = Arrays.asList(r);
-                server.getNetwork().broadcastPacket(ubp, PocketPlayer.class);
+                getLocation().getLevel().setBlock(rbp.x, rbp.y & 0xFF, rbp.z, (byte) ItemValues.AIR, (byte) 0); //TODO
                 break;
 
             case PENetworkInfo.ANIMATE_PACKET:
@@ -263,39 +240,22 @@ public class PocketPlayer extends Human implements Player{
                 }
                 AnimatePacket ap = (AnimatePacket) packet;
 
-                AnimatePacket ap2 = new AnimatePacket();
+                AnimatePacket ap2 = AnimatePacket.POOL.acquire();
                 ap2.eid = getId();
                 ap2.action = ap.action;
                 server.getNetwork().broadcastPacket(ap2, PocketPlayer.class);
+                ap2.release();
                 break;
 
             case PENetworkInfo.USE_ITEM_PACKET:
                 if(!spawned /*|| !alive*/){
                     break;
                 }
-                UseItemPacket uip = new UseItemPacket();
-                Vector3 vector = new Vector3(uip.x, uip.y, uip.z);
+                UseItemPacket uip = (UseItemPacket) packet;
 
                 if(uip.face >= 0 && uip.face <= 5) { //Block place
-                    UpdateBlockPacket ubp2 = new UpdateBlockPacket();
-
-                    UpdateBlockPacket.Record record = new UpdateBlockPacket.Record();
-                    /*
-                    record.x = vector.getX();
-                    record.y = (byte) vector.getY();
-                    record.z = vector.getZ();
-                    */
-                    record.x = uip.x;
-                    record.y = (byte) uip.y;
-                    record.z = uip.z;
-
-                    record.blockId = (byte) uip.item;
-                    //record.blockData = (byte) (0xb << 4 | (uip.meta & 0xF));
-                    record.blockData = (byte) uip.meta;
-                    record.flags = UpdateBlockPacket.FLAG_ALL_PRIORITY;
-
-                    ubp2.records = Arrays.asList(record);
-                    server.getNetwork().broadcastPacket(ubp2, PocketPlayer.class);
+                    Vector3 vector = new Vector3(uip.x, uip.y, uip.z).getSide(uip.face, 1);
+                    getLocation().getLevel().setBlock(vector.getX(), vector.getY(), vector.getZ(), (byte) uip.item, (byte) uip.meta);
                     //vector.distanceSquared(new Vector3((int) getLocation().getX(), (int) getLocation().getY(), (int) getLocation().getZ()))
                 }
                 break;
@@ -312,7 +272,7 @@ public class PocketPlayer extends Human implements Player{
      * @param l
      */
     public void sendPosition(Location l, boolean onGround) {
-        MovePlayerPacket mpp = new MovePlayerPacket();
+        MovePlayerPacket mpp = MovePlayerPacket.POOL.acquire();
         mpp.onGround = onGround;
         mpp.eid = getId();
         mpp.x = (float) l.getX();
@@ -322,6 +282,7 @@ public class PocketPlayer extends Human implements Player{
         mpp.pitch = l.getPitch();
         mpp.bodyYaw = l.getYaw(); //TODO: body yaw
         sendDataPacket(mpp);
+        mpp.release();
     }
 
     private void sendLoginPackets() {
@@ -412,16 +373,37 @@ public class PocketPlayer extends Human implements Player{
         sendData(this, Arrays.asList(this), 0, getFakeMetadata());
     }
 
+    /**
+     * Fires the async PlayerChatEvent, then sends the message on the main thread.
+     * Messages of one player are chained so they are delivered in the order they were sent, a failure only drops that message.
+     * @param message The chat message.
+     */
+    private void chat(String message){
+        PlayerChatEvent pce = new PlayerChatEvent(this, message);
+        chatChain = chatChain.thenCompose(v -> server.throwEventAsync(pce)).thenAccept(e -> server.getScheduler().runTask(server, () -> {
+            if(!e.isCanceled()) {
+                server.getLogger().info(e.getFormat());
+                server.broadcastMessage(e.getFormat(), e.getRecipents());
+            }
+        })).exceptionally(t -> {
+            //Recover, so one failed message does not drop every later message of this player
+            server.getLogger().error("Could not handle chat message of "+username+": "+t);
+            return null;
+        });
+    }
+
     @Override
     public void sendDirectDataPacket(DataPacket packet){
         if(!connected){
             return;
         }
 
-        DataPacketSendEvent evt = new DataPacketSendEvent(packet, this);
-        server.throwEvent(evt);
-        if(evt.isCanceled())
-            return;
+        if(server.getEventManager().hasListeners(DataPacketSendEvent.class)){
+            DataPacketSendEvent evt = new DataPacketSendEvent(packet, this);
+            server.throwEvent(evt);
+            if(evt.isCanceled())
+                return;
+        }
 
         rakLibInterface.sendPacket(this, packet, false, true);
     }
@@ -432,10 +414,12 @@ public class PocketPlayer extends Human implements Player{
             return;
         }
 
-        DataPacketSendEvent evt = new DataPacketSendEvent(packet, this);
-        server.throwEvent(evt);
-        if(evt.isCanceled())
-            return;
+        if(server.getEventManager().hasListeners(DataPacketSendEvent.class)){
+            DataPacketSendEvent evt = new DataPacketSendEvent(packet, this);
+            server.throwEvent(evt);
+            if(evt.isCanceled())
+                return;
+        }
 
         rakLibInterface.sendPacket(this, packet, false, false);
     }
@@ -472,6 +456,7 @@ public class PocketPlayer extends Human implements Player{
             connected = false;
             loggedIn = false;
             spawned = false;
+            outboundQueue.clear();
 
             getLocation().getLevel().despawnFromAll(this);
             
@@ -495,6 +480,15 @@ public class PocketPlayer extends Human implements Player{
         return identifier;
     }
 
+    /**
+     * Returns the queue of packets prepared off the main thread for this player, sent on the next network flush.
+     * 
+     * @return OutboundQueue
+     */
+    public OutboundQueue getOutboundQueue() {
+        return outboundQueue;
+    }
+
     /**
      * Returns the players IP Address
      * 
@@ -555,24 +549,27 @@ public class PocketPlayer extends Human implements Player{
      * @param message The message to be sent to the player.
      */
     public void sendMessage(String message) {
-    	TextPacket packet = new TextPacket();
+    	TextPacket packet = TextPacket.POOL.acquire();
         packet.type = TextPacket.TYPE_RAW;
         packet.message = message;
         sendDataPacket(packet);
+        packet.release();
     }
     
     public void sendPopup(String message) {
-    	TextPacket packet = new TextPacket();
+    	TextPacket packet = TextPacket.POOL.acquire();
         packet.type = TextPacket.TYPE_POPUP;
         packet.message = message;
         sendDataPacket(packet);
+        packet.release();
     }
     
     public void sendTip(String message) {
-    	TextPacket packet = new TextPacket();
+    	TextPacket packet = TextPacket.POOL.acquire();
         packet.type = TextPacket.TYPE_TIP;
         packet.message = message;
         sendDataPacket(packet);
+        packet.release();
     }
     
     /**
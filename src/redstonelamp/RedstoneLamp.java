@@ -131,6 +131,7 @@ public class RedstoneLamp implements Runnable{
 		getServerInstance().getCommandManager().registerCommand("sudo", "Run a command as a player", new Sudo(), "redstonelamp.command.sudo");
 		getServerInstance().getCommandManager().registerCommand("teleport", "Teleports a player", new Teleport(), "redstonelamp.command.tp");
 		getServerInstance().getCommandManager().registerCommand("tell", "Sends a player a message", new Tell(), "redstonelamp.command.tell");
+		getServerInstance().getCommandManager().registerCommand("timings", "Shows where the server spends its tick time", new Timings(), "redstonelamp.command.timings");
 		getServerInstance().getCommandManager().registerCommand("time", "Manages the server time", new Time(), "redstonelamp.command.time");
 		getServerInstance().getCommandManager().registerCommand("version", "Shows information about RedstoneLamp", new Version(), "redstonelamp.command.version");
 		getServerInstance().getCommandManager().registerCommand("whitelist", "Manages whitelisted players", new Whitelist(), "redstonelamp.command.whitelist");
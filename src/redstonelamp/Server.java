@@ -4,22 +4,25 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.lang.reflect.Method;
 import java.nio.BufferUnderflowException;
-import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Properties;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.LockSupport;
 
-import javax.script.Invocable;
-import javax.script.ScriptException;
 
+import org.apache.mina.core.session.IoSession;
 import redstonelamp.auth.AuthenticationManager;
 import redstonelamp.auth.pc.PCAuthAgent;
 import redstonelamp.cmd.CommandManager;
+import redstonelamp.entity.Entity;
+import redstonelamp.entity.EntityManager;
+import redstonelamp.event.AsyncEvent;
 import redstonelamp.event.Event;
 import redstonelamp.event.EventManager;
-import redstonelamp.event.Listener;
 import redstonelamp.event.server.ServerStopEvent;
 import redstonelamp.event.server.ServerTickEvent;
 import redstonelamp.io.playerdata.GenericPlayerDatabase;
@@ -29,13 +32,24 @@ import redstonelamp.level.Level;
 import redstonelamp.level.provider.FakeLevelProvider;
 import redstonelamp.network.JRakLibInterface;
 import redstonelamp.network.Network;
+import redstonelamp.network.PENetworkInfo;
+import redstonelamp.network.packet.PacketPool;
+import redstonelamp.network.packet.TextPacket;
 import redstonelamp.network.pc.PCInterface;
 import redstonelamp.plugin.PluginManager;
 import redstonelamp.resources.YamlConfiguration;
+import redstonelamp.scheduler.ServerScheduler;
+import redstonelamp.timings.Timing;
+import redstonelamp.timings.TimingsManager;
+import redstonelamp.utils.CompressionUtils;
 import redstonelamp.utils.MainLogger;
 import redstonelamp.utils.ServerIcon;
+import redstonelamp.utils.TickStatistics;
 
 public class Server implements Runnable {
+    public final static int TICKS_PER_SECOND = 20;
+    public final static long TICK_NANOS = 1000000000L / TICKS_PER_SECOND;
+
     private boolean debugMode;
     private String motd;
     private ServerIcon icon;
@@ -45,11 +59,13 @@ public class Server implements Runnable {
     private Properties properties;
 
     private boolean running = false;
+    private TickStatistics tickStatistics = new TickStatistics(TICKS_PER_SECOND);
+    private int maxCatchupTicks;
 
     private String bindInterface;
     private int bindPort;
 
-    private final List<Player> players = new CopyOnWriteArrayList();
+    private final PlayerRegistry players = new PlayerRegistry();
     private Network network;
     private Level mainLevel;
     private PlayerDatabase playerDatabase;
@@ -59,15 +75,25 @@ public class Server implements Runnable {
     private EventManager eventManager;
     private CommandManager commandManager;
     private AuthenticationManager authManager;
+    private TimingsManager timings = new TimingsManager();
+    private volatile Thread primaryThread;
+    private ServerScheduler scheduler;
 
     private boolean shuttingDown = false;
-    private int nextEntityID = 1;
+    private EntityManager entityManager;
     private File playerDatbaseLocation;
 
     private boolean onlineMode = false;
 
     public Server(Properties properties, MainLogger logger){
-    	eventManager = new EventManager();
+    	eventManager = new EventManager(this);
+    	entityManager = new EntityManager(RedstoneLamp.yaml != null && RedstoneLamp.yaml.getBoolean("settings", "recycle-entity-ids", false));
+    	PacketPool.setDebug(RedstoneLamp.yaml != null && RedstoneLamp.yaml.getBoolean("debug", "packet-pool", false));
+    	if(RedstoneLamp.yaml != null) {
+    		int level = RedstoneLamp.yaml.getInt("network", "compression-level", 7);
+    		CompressionUtils.setDefaultLevel(level);
+    		PENetworkInfo.COMPRESSION_LEVEL = level;
+    	}
     	commandManager = new CommandManager();
         this.logger = logger;
         this.properties = properties;
@@ -84,12 +110,14 @@ public class Server implements Runnable {
         	e.printStackTrace();
         }
         maxPlayers = Integer.parseInt(properties.getProperty("max-players", "20"));
+        maxCatchupTicks = RedstoneLamp.yaml == null ? 5 : RedstoneLamp.yaml.getInt("settings", "max-catchup-ticks", 5);
 
 
         logger.info("This server is running " + RedstoneLamp.SOFTWARE + " version " + RedstoneLamp.VERSION + " \"" + RedstoneLamp.CODENAME + "\" (API " + RedstoneLamp.API_VERSION + ")");
         logger.info(RedstoneLamp.SOFTWARE + " is distributed under the " + RedstoneLamp.LICENSE);
 
         RedstoneLamp.setServerInstance(this);
+        scheduler = new ServerScheduler(this);
 
         mainLevel = new Level(this);
         if(mainLevel.getProvider() instanceof FakeLevelProvider){
@@ -136,6 +164,7 @@ public class Server implements Runnable {
 
         logger.info("Done! Type \"help\" for help.");
         cli = new BufferedReader(new InputStreamReader(System.in));
+        startConsoleReader();
         
         running = true;
         run();
@@ -143,44 +172,100 @@ public class Server implements Runnable {
 
     @Override
     public void run(){
+        primaryThread = Thread.currentThread();
+        timings.setTimingThread(primaryThread);
+        long nextTick = System.nanoTime();
+        long lastTickStart = nextTick - TICK_NANOS;
         while(running){
-            long start = Instant.now().toEpochMilli();
+            long start = System.nanoTime();
             tick();
-            long diff = Instant.now().toEpochMilli() - start;
-            if(diff < 50){
-                long until = Instant.now().toEpochMilli() + (50 - diff);
-                while(true) {
-                    if (Instant.now().toEpochMilli() >= until) {
-                        break;
-                    }
-                }
-            } else {
-                logger.warning(diff+">50 Did the system time change, or is the server overloaded?");
+            long end = System.nanoTime();
+            tickStatistics.record(start - lastTickStart, end - start);
+            lastTickStart = start;
+
+            nextTick += TICK_NANOS;
+            long behind = end - nextTick;
+            if(behind <= 0){
+                sleepUntil(nextTick);
+            } else if(behind > maxCatchupTicks * TICK_NANOS){
+                //Too far behind to catch up, drop the missed ticks instead of running them back-to-back
+                long skipped = behind / TICK_NANOS;
+                logger.warning("Can't keep up! Did the system time change, or is the server overloaded? Running "+(behind / 1000000)+"ms behind, skipping "+skipped+" tick(s)");
+                nextTick = end;
             }
         }
     }
 
+    /**
+     * Parks the main thread until <code>deadline</code> (in System.nanoTime() time) has been reached.
+     */
+    private void sleepUntil(long deadline){
+        long remaining;
+        while(running && (remaining = deadline - System.nanoTime()) > 0){
+            LockSupport.parkNanos(this, remaining);
+            Thread.interrupted(); //An interrupt would make parkNanos return immediately and spin
+        }
+    }
+
+    /**
+     * Starts the thread reading console input. Commands are handed to the main thread through the scheduler.
+     */
+    private void startConsoleReader(){
+        Thread reader = new Thread(() -> {
+            try {
+                String line;
+                while(!shuttingDown && (line = cli.readLine()) != null){
+                    String command = line;
+                    scheduler.runTask(this, () -> commandManager.getCommandExecutor().executeCommand(command, this));
+                }
+            } catch (IOException e) {}
+        }, "Console Reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
     /**
      * Executes a server tick.
      */
     private void tick() {
+        timings.getFullServerTickTiming().startTiming();
         try {
-            network.tick();
-            mainLevel.tick();
-            throwEvent(new ServerTickEvent());
-            RedstoneLamp.getAsync().execute(() -> {
-                String line = null;
+            scheduler.mainThreadHeartbeat();
+
+            timings.getNetworkTickTiming().startTiming();
+            try {
+                network.tick();
+            } finally {
+                timings.getNetworkTickTiming().stopTiming();
+            }
+
+            timings.getLevelTickTiming().startTiming();
+            try {
+                mainLevel.tick();
+            } finally {
+                timings.getLevelTickTiming().stopTiming();
+            }
+
+            if(eventManager.hasListeners(ServerTickEvent.class)){
+                timings.getTickEventTiming().startTiming();
                 try {
-                    if (cli.ready()) {
-                        line = cli.readLine();
-                        if (line != null)
-                            RedstoneLamp.getServerInstance().getCommandManager().getCommandExecutor().executeCommand(line, RedstoneLamp.getServerInstance());
-                    }
-                } catch (IOException e) {}
-            });
+                    throwEvent(new ServerTickEvent());
+                } finally {
+                    timings.getTickEventTiming().stopTiming();
+                }
+            }
+
+            timings.getNetworkFlushTiming().startTiming();
+            try {
+                network.flush();
+            } finally {
+                timings.getNetworkFlushTiming().stopTiming();
+            }
         } catch(Exception e){
             logger.warning("Exception in tick: "+e.getMessage());
             e.printStackTrace(System.err);
+        } finally {
+            timings.getFullServerTickTiming().stopTiming();
         }
     }
 
@@ -190,33 +275,78 @@ public class Server implements Runnable {
      * @param Player
      */
     public void addPlayer(Player player){
-        synchronized (players){
-            players.add(player);
+        players.add(player);
+        if(player instanceof Entity){
+            entityManager.register((Entity) player);
         }
     }
 
     /**
-     * Gets a player from the server
+     * Gets a player from the server by session identifier
      * 
      * @param String
      * @return Player
      */
     public Player getPlayer(String identifier){
-        synchronized (players){
-            for(Player player : players){
-                if(player.getIdentifier().equals(identifier)){
-                    return player;
-                }
-            }
-        }
-        return null;
+        return players.getByIdentifier(identifier);
+    }
+
+    /**
+     * Gets a desktop player from the server by MINA session
+     * 
+     * @param IoSession
+     * @return Player
+     */
+    public Player getPlayer(IoSession session){
+        return players.getBySession(session);
+    }
+
+    /**
+     * Gets a logged in player from the server by UUID
+     * 
+     * @param UUID
+     * @return Player
+     */
+    public Player getPlayer(UUID uuid){
+        return players.getByUUID(uuid);
+    }
+
+    /**
+     * Gets a logged in player from the server by name, ignoring case
+     * 
+     * @param String
+     * @return Player
+     */
+    public Player getPlayerByName(String name){
+        return players.getByName(name);
     }
     
 	public void broadcast(String message) {
 		logger.noTag(message);
-		for(Player p : getOnlinePlayers()) {
-			p.sendMessage(message);
+		broadcastMessage(message, getOnlinePlayers());
+	}
+	
+	/**
+	 * Sends a message to the given players, the chat packet is encoded once for all of them
+	 * 
+	 * @param message
+	 * @param recipients
+	 */
+	public void broadcastMessage(String message, Collection<? extends Player> recipients) {
+		List<Player> pocketPlayers = new ArrayList<>(recipients.size());
+		for(Player p : recipients) {
+			if(p instanceof PocketPlayer)
+				pocketPlayers.add(p);
+			else
+				p.sendMessage(message);
 		}
+		if(pocketPlayers.isEmpty())
+			return;
+		TextPacket packet = TextPacket.POOL.acquire();
+		packet.type = TextPacket.TYPE_RAW;
+		packet.message = message;
+		network.broadcastPacket(packet, pocketPlayers);
+		packet.release();
 	}
 	
 	/**
@@ -225,34 +355,17 @@ public class Server implements Runnable {
 	 * @param e
 	 */
 	public void throwEvent(Event e) {
-		for(Listener l : RedstoneLamp.getServerInstance().getEventManager().getListeners()) {
-			l.onEvent(e);
-			Method[] methods = l.getClass().getDeclaredMethods();
-			for(Method method : methods) {
-				method.setAccessible(true);
-				Class<?>[] params = method.getParameterTypes();
-				if(params.length == 1) {
-					if(params[0].equals(e.getClass())) {
-						try {
-							method.invoke(l, e);
-						} catch(Exception ex) {
-							ex.printStackTrace();
-						}
-					}
-				}
-			}
-			for(Object o : getPluginManager().getPluginArray()) {
-				if(o instanceof Invocable) {
-					Invocable i = (Invocable) o;
-					try {
-						String eventName = "on" + e.getClass().getSimpleName();
-						i.invokeFunction(eventName, e.getClass());
-					} catch (NoSuchMethodException ex) {} catch (ScriptException ex) {
-						ex.printStackTrace();
-					}
-				}
-			}
-		}
+		eventManager.callEvent(e);
+	}
+
+	/**
+	 * Throws an async event on the worker pool
+	 * 
+	 * @param e
+	 * @return CompletableFuture<T>
+	 */
+	public <T extends AsyncEvent> CompletableFuture<T> throwEventAsync(T e) {
+		return eventManager.callEventAsync(e);
 	}
 
     /**
@@ -261,6 +374,9 @@ public class Server implements Runnable {
      */
     public void removePlayer(Player player){
         players.remove(player);
+        if(player instanceof Entity){
+            entityManager.unregister((Entity) player);
+        }
     }
 
     /**
@@ -327,6 +443,15 @@ public class Server implements Runnable {
      * @return List<Player>
      */
     public List<Player> getOnlinePlayers() {
+        return players.getPlayers();
+    }
+
+    /**
+     * Returns the index of connected players
+     * 
+     * @return PlayerRegistry
+     */
+    public PlayerRegistry getPlayerRegistry() {
         return players;
     }
     
@@ -352,6 +477,42 @@ public class Server implements Runnable {
     	return commandManager;
     }
 
+    /**
+     * Returns the rolling TPS and MSPT averages of the main thread
+     * 
+     * @return TickStatistics
+     */
+    public TickStatistics getTickStatistics() {
+        return tickStatistics;
+    }
+
+    /**
+     * Returns the task scheduler
+     * 
+     * @return ServerScheduler
+     */
+    public ServerScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Returns the timings of the tick phases, network interfaces, listeners and plugins
+     * 
+     * @return TimingsManager
+     */
+    public TimingsManager getTimings() {
+        return timings;
+    }
+
+    /**
+     * Returns true if the calling thread is the main (tick) thread
+     * 
+     * @return boolean
+     */
+    public boolean isPrimaryThread() {
+        return Thread.currentThread() == primaryThread;
+    }
+
     /**
      * Returns the servers MOTD
      * 
@@ -394,8 +555,17 @@ public class Server implements Runnable {
      * Returns the next entityID.
      * @return nextEntityID.
      */
-    public synchronized int getNextEntityId() { //TODO: move to new EntityManager
-        return nextEntityID++;
+    public int getNextEntityId() {
+        return entityManager.allocateId();
+    }
+
+    /**
+     * Returns the entity ID allocator and registry
+     * 
+     * @return EntityManager
+     */
+    public EntityManager getEntityManager() {
+        return entityManager;
     }
 
     /**
@@ -425,10 +595,7 @@ public class Server implements Runnable {
         shuttingDown = true;
     	logger.info("Stopping the server...");
     	throwEvent(new ServerStopEvent());
-    	try {
-    		if(cli instanceof BufferedReader)
-    			cli.close();
-		} catch (IOException e) {}
+    	//The console reader is not closed: close() waits for the lock held by the blocked readLine(), the daemon thread dies with the JVM
 		for(Player p : getOnlinePlayers()) {
 			p.close(" left the game", ((String) RedstoneLamp.yaml.getInMap("settings").get("shutdown-message")), true);
 		}
@@ -1,11 +1,11 @@
 package redstonelamp.cmd;
 
-import javax.script.Invocable;
 import javax.script.ScriptException;
 
 import redstonelamp.RedstoneLamp;
 import redstonelamp.Server;
 import redstonelamp.event.cmd.CommandExecuteEvent;
+import redstonelamp.plugin.js.JavaScriptPlugin;
 
 public class CommandExecutor {
 	private Server server;
@@ -22,7 +22,7 @@ public class CommandExecutor {
 		String label = null; //TODO
 		server.throwEvent(new CommandExecuteEvent(commandSender, cmd, label, args));
 		for(int i = 0; i < (server.getCommandManager().getCommandMap().commands.size()); i++) {
-			if(command.startsWith(server.getCommandManager().getCommandMap().commands.get(i))) {
+			if(args[0].equals(server.getCommandManager().getCommandMap().commands.get(i))) {
 				if(server.getCommandManager().getCommandMap().listeners.get(i) != null) {
 					server.getCommandManager().getCommandMap().listeners.get(i).onCommand(commandSender, cmd, label, args);
 					executed = true;
@@ -30,12 +30,11 @@ public class CommandExecutor {
 			}
 		}
 		for(Object plugin : server.getPluginManager().getPluginArray()) {
-			if(plugin instanceof Invocable) {
-				Invocable p = (Invocable) plugin;
+			if(plugin instanceof JavaScriptPlugin) {
 				try {
-					p.invokeFunction("onCommand", commandSender, cmd, label, args);
-					executed = true;
-				} catch(NoSuchMethodException e) {} catch(ScriptException e) {
+					if(((JavaScriptPlugin) plugin).call("onCommand", commandSender, cmd, label, args))
+						executed = true;
+				} catch(ScriptException e) {
 					e.printStackTrace();
 				}
 			}
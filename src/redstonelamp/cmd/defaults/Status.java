@@ -1,11 +1,56 @@
 package redstonelamp.cmd.defaults;
 
+import redstonelamp.Player;
+import redstonelamp.PocketPlayer;
+import redstonelamp.RedstoneLamp;
+import redstonelamp.Server;
 import redstonelamp.cmd.Command;
 import redstonelamp.cmd.CommandListener;
 import redstonelamp.cmd.CommandSender;
+import redstonelamp.level.BlockChangeAggregator;
+import redstonelamp.level.ChunkPacketCache;
+import redstonelamp.level.MovementCoalescer;
+import redstonelamp.network.OutboundQueue;
+import redstonelamp.network.RateLimiter;
+import redstonelamp.utils.BufferPool;
+import redstonelamp.utils.TextFormat;
+import redstonelamp.utils.TickStatistics;
 
 public class Status implements CommandListener {
 	public void onCommand(CommandSender sender, Command cmd, String label, String[] args) {
-		
+		Server server = RedstoneLamp.getServerInstance();
+		TickStatistics stats = server.getTickStatistics();
+		double[] tps = stats.getTicksPerSecond();
+		double[] mspt = stats.getMillisPerTick();
+		sender.sendMessage("=== Server Status ===");
+		sender.sendMessage("TPS (1s, 1m, 5m): " + formatTps(tps[0]) + ", " + formatTps(tps[1]) + ", " + formatTps(tps[2]));
+		sender.sendMessage("MSPT (1s, 1m, 5m): " + String.format("%.2f, %.2f, %.2f", mspt[0], mspt[1], mspt[2]));
+		sender.sendMessage("Players: " + server.getOnlinePlayers().size() + "/" + server.getMaxPlayers());
+		Runtime runtime = Runtime.getRuntime();
+		sender.sendMessage("Memory: " + ((runtime.totalMemory() - runtime.freeMemory()) / 1048576) + "MB / " + (runtime.maxMemory() / 1048576) + "MB");
+		BufferPool pool = BufferPool.getEncodePool();
+		sender.sendMessage("Encode buffers: " + pool.getAcquiredCount() + " acquired, " + String.format("%.1f", pool.getHitRate() * 100) + "% reused, " + pool.getDiscardedCount() + " discarded");
+		int queued = 0;
+		int highWaterMark = 0;
+		for(Player player : server.getOnlinePlayers()) {
+			if(player instanceof PocketPlayer) {
+				OutboundQueue queue = ((PocketPlayer) player).getOutboundQueue();
+				queued += queue.size();
+				highWaterMark = Math.max(highWaterMark, queue.getHighWaterMark());
+			}
+		}
+		sender.sendMessage("Outbound queues: " + queued + " queued, highest depth " + highWaterMark);
+		ChunkPacketCache chunkCache = server.getMainLevel().getChunkCache();
+		sender.sendMessage("Chunk cache: " + chunkCache.size() + " chunks, " + (chunkCache.getBytes() / 1024) + "KB, " + chunkCache.getHitCount() + " hits, " + chunkCache.getMissCount() + " misses");
+		MovementCoalescer movement = server.getMainLevel().getMovementCoalescer();
+		sender.sendMessage("Movement: " + movement.getSentCount() + " sent, " + movement.getSuppressedCount() + " held back");
+		BlockChangeAggregator blockChanges = server.getMainLevel().getBlockChanges();
+		sender.sendMessage("Block updates: " + blockChanges.getRecordCount() + " blocks in " + blockChanges.getPacketCount() + " packets, " + blockChanges.getResendCount() + " chunk resends");
+		sender.sendMessage("Rate limiting: " + RateLimiter.getTotalThrottled() + " throttled, " + RateLimiter.getTotalDropped() + " dropped, " + RateLimiter.getTotalKicked() + " kicked");
+	}
+
+	private String formatTps(double tps) {
+		TextFormat color = tps >= 18 ? TextFormat.GREEN : (tps >= 15 ? TextFormat.YELLOW : TextFormat.RED);
+		return color + String.format("%.2f", Math.min(tps, Server.TICKS_PER_SECOND)) + TextFormat.RESET;
 	}
 }
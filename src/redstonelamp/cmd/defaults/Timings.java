@@ -0,0 +1,45 @@
+package redstonelamp.cmd.defaults;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.apache.commons.io.FileUtils;
+
+import redstonelamp.RedstoneLamp;
+import redstonelamp.cmd.Command;
+import redstonelamp.cmd.CommandListener;
+import redstonelamp.cmd.CommandSender;
+import redstonelamp.timings.TimingsManager;
+
+public class Timings implements CommandListener {
+	public void onCommand(CommandSender sender, Command cmd, String label, String[] args) {
+		TimingsManager timings = RedstoneLamp.getServerInstance().getTimings();
+		String mode = args.length > 1 ? args[1] : "report";
+		switch(mode) {
+			case "reset":
+				timings.reset();
+				sender.sendMessage("Timings reset.");
+				break;
+			case "json":
+				File file = new File("timings/timings-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".json");
+				try {
+					FileUtils.writeStringToFile(file, timings.getJSONReport().toJSONString(), Charset.forName("UTF-8"));
+					sender.sendMessage("Timings written to " + file.getPath());
+				} catch(IOException e) {
+					sender.sendMessage("Failed to write timings: " + e.getMessage());
+				}
+				break;
+			case "report":
+				for(String line : timings.getTextReport()) {
+					sender.sendMessage(line);
+				}
+				break;
+			default:
+				sender.sendMessage("Usage: /timings [report|json|reset]");
+				break;
+		}
+	}
+}
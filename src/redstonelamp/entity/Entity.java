@@ -1,6 +1,8 @@
 package redstonelamp.entity;
 
 import redstonelamp.Player;
+import redstonelamp.RedstoneLamp;
+import redstonelamp.level.Level;
 import redstonelamp.level.location.Location;
 import redstonelamp.network.NetworkChannel;
 import redstonelamp.network.packet.SetEntityDataPacket;
@@ -24,7 +26,7 @@ public abstract class Entity {
     private Location location;
     private long entityID;
 
-    private List<Player> hasSpawned = new ArrayList<>();
+    private Set<Player> hasSpawned = new LinkedHashSet<>();
     private EntityMetadata dataProperties = new EntityMetadata();
 
     public Entity(int id){
@@ -36,10 +38,19 @@ public abstract class Entity {
     }
 
     protected void setLocation(Location location){
+        Level from = this.location != null ? this.location.getLevel() : null;
         this.location = location;
+        Level to = location != null ? location.getLevel() : null;
+        if(from != to && RedstoneLamp.getServerInstance() != null){
+            RedstoneLamp.getServerInstance().getEntityManager().onLevelChange(this, from, to);
+        }
     }
 
-    public List<Player> getViewers(){
+    /**
+     * Returns the players this entity is spawned to.
+     * @return Set<Player>
+     */
+    public Set<Player> getViewers(){
         return hasSpawned;
     }
 
@@ -81,7 +92,7 @@ public abstract class Entity {
         return dataProperties;
     }
 
-    public void sendData(Entity entity, List<Player> players, int id, EntityMetadata metadata) {
+    public void sendData(Entity entity, Collection<Player> players, int id, EntityMetadata metadata) {
         SetEntityDataPacket sedp = new SetEntityDataPacket();
         sedp.eid = entity instanceof Player ? 0 : entity.getId();
         sedp.metadata = metadata;
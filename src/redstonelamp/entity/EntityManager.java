@@ -0,0 +1,129 @@
+package redstonelamp.entity;
+
+import redstonelamp.level.Level;
+import redstonelamp.utils.IntObjectMap;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Allocates entity IDs and keeps track of the spawned entities, by ID and by level.
+ */
+public class EntityManager {
+    private final AtomicInteger nextEntityId = new AtomicInteger(1);
+    private final Queue<Integer> freeIds = new ConcurrentLinkedQueue<>();
+    private final boolean recycleIds;
+
+    private final IntObjectMap<Entity> entities = new IntObjectMap<>(256);
+    private final Map<Level, Set<Entity>> levelEntities = new ConcurrentHashMap<>();
+
+    /**
+     * Create a new EntityManager.
+     * @param recycleIds If IDs of removed entities should be handed out again.
+     */
+    public EntityManager(boolean recycleIds){
+        this.recycleIds = recycleIds;
+    }
+
+    /**
+     * Allocates a new entity ID. Lock free, can be called from any thread.
+     * @return int
+     */
+    public int allocateId(){
+        if(recycleIds){
+            Integer id = freeIds.poll();
+            if(id != null){
+                return id;
+            }
+        }
+        return nextEntityId.getAndIncrement();
+    }
+
+    /**
+     * Registers an entity, so it can be found by its ID and level.
+     * @param entity The Entity.
+     */
+    public void register(Entity entity){
+        synchronized (entities){
+            entities.put((int) entity.getId(), entity);
+        }
+        if(entity.getLocation() != null && entity.getLocation().getLevel() != null){
+            getLevelSet(entity.getLocation().getLevel()).add(entity);
+        }
+    }
+
+    /**
+     * Unregisters an entity and releases its ID.
+     * @param entity The Entity.
+     */
+    public void unregister(Entity entity){
+        Entity removed;
+        synchronized (entities){
+            removed = entities.get((int) entity.getId()) == entity ? entities.remove((int) entity.getId()) : null;
+        }
+        if(removed == null){
+            return;
+        }
+        for(Set<Entity> set : levelEntities.values()){
+            set.remove(entity);
+        }
+        if(recycleIds){
+            freeIds.add((int) entity.getId());
+        }
+    }
+
+    /**
+     * Returns the registered entity with this ID.
+     * @param id The entity ID.
+     * @return The Entity, or null.
+     */
+    public Entity getEntity(int id){
+        synchronized (entities){
+            return entities.get(id);
+        }
+    }
+
+    /**
+     * Returns the registered entities on a level.
+     * @param level The Level.
+     * @return Collection<Entity>
+     */
+    public Collection<Entity> getEntities(Level level){
+        Set<Entity> set = levelEntities.get(level);
+        return set == null ? Collections.emptySet() : Collections.unmodifiableSet(set);
+    }
+
+    public int getEntityCount(){
+        synchronized (entities){
+            return entities.size();
+        }
+    }
+
+    /**
+     * INTERNAL METHOD! Called when an entity moves to another level.
+     * @param entity The Entity.
+     * @param from The old level, may be null.
+     * @param to The new level, may be null.
+     */
+    void onLevelChange(Entity entity, Level from, Level to){
+        if(getEntity((int) entity.getId()) != entity){
+            return;
+        }
+        if(from != null){
+            getLevelSet(from).remove(entity);
+        }
+        if(to != null){
+            getLevelSet(to).add(entity);
+        }
+    }
+
+    private Set<Entity> getLevelSet(Level level){
+        return levelEntities.computeIfAbsent(level, l -> ConcurrentHashMap.newKeySet());
+    }
+}
@@ -0,0 +1,9 @@
+package redstonelamp.event;
+
+/**
+ * Base class for events that are dispatched on the async worker pool, see <code>EventManager.callEventAsync()</code>.
+ * Handlers of async events must not touch the level or players directly, use the <code>ServerScheduler</code>
+ * to get back onto the main thread.
+ */
+public abstract class AsyncEvent extends Event {
+}
@@ -0,0 +1,45 @@
+package redstonelamp.event;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Invokes a single event handler method on a listener.
+ */
+@FunctionalInterface
+public interface EventExecutor {
+	void execute(Listener listener, Event event) throws Throwable;
+
+	/**
+	 * Creates an executor for a handler method. A <code>LambdaMetafactory</code> generated invoker is used where the
+	 * method is accessible to the core, otherwise the executor falls back to an adapted <code>MethodHandle</code>.
+	 *
+	 * @param Method
+	 * @return EventExecutor
+	 */
+	static EventExecutor create(Method method) throws IllegalAccessException {
+		method.setAccessible(true);
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		MethodHandle handle = lookup.unreflect(method);
+		Class<?> owner = method.getDeclaringClass();
+		if(Modifier.isPublic(method.getModifiers()) && Modifier.isPublic(owner.getModifiers()) && owner.getClassLoader() == EventExecutor.class.getClassLoader()) {
+			try {
+				CallSite site = LambdaMetafactory.metafactory(lookup, "execute",
+						MethodType.methodType(EventExecutor.class),
+						MethodType.methodType(void.class, Listener.class, Event.class),
+						handle,
+						MethodType.methodType(void.class, owner, method.getParameterTypes()[0]));
+				return (EventExecutor) site.getTarget().invokeExact();
+			} catch(Throwable t) {
+				//Not every method can be bound by the metafactory, use the MethodHandle instead
+			}
+		}
+		MethodHandle adapted = handle.asType(MethodType.methodType(void.class, Listener.class, Event.class));
+		return (listener, event) -> adapted.invokeExact(listener, event);
+	}
+}
@@ -0,0 +1,28 @@
+package redstonelamp.event;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method of a <code>Listener</code> as an event handler. The method must take exactly one parameter,
+ * the event, and receives that event class and all of its subclasses.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface EventHandler {
+	/**
+	 * Returns the priority of the handler
+	 *
+	 * @return EventPriority
+	 */
+	EventPriority priority() default EventPriority.NORMAL;
+
+	/**
+	 * If true, the handler is skipped for events that a previous handler canceled
+	 *
+	 * @return boolean
+	 */
+	boolean ignoreCancelled() default false;
+}
@@ -1,25 +1,242 @@
 package redstonelamp.event;
 
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.script.ScriptException;
+
+import redstonelamp.RedstoneLamp;
+import redstonelamp.Server;
+import redstonelamp.plugin.js.JavaScriptPlugin;
+import redstonelamp.timings.Timing;
 
 public class EventManager {
-	private ArrayList<Listener> listeners = new ArrayList<Listener>();
-	
+	private final static RegisteredHandler[] NO_HANDLERS = new RegisteredHandler[0];
+
+	private final Server server;
+	private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+	private final Map<Listener, List<RegisteredHandler>> handlers = new ConcurrentHashMap<Listener, List<RegisteredHandler>>();
+	private final Map<Class<? extends Event>, RegisteredHandler[]> baked = new ConcurrentHashMap<Class<? extends Event>, RegisteredHandler[]>();
+	private final Set<String> scriptEvents = ConcurrentHashMap.newKeySet();
+
+	public EventManager(Server server) {
+		this.server = server;
+	}
+
 	/**
 	 * Returns all classes events are registered to
-	 * 
-	 * @return ArrayList<Object>
+	 *
+	 * @return List<Listener>
 	 */
-	public ArrayList<Listener> getListeners() {
-		return listeners;
+	public List<Listener> getListeners() {
+		return Collections.unmodifiableList(listeners);
 	}
-	
+
 	/**
-	 * Registers an event listener
-	 * 
+	 * Registers an event listener. Its handler methods are resolved once here, not on every event.
+	 *
 	 * @param Listener
 	 */
-	public void registerEvents(Listener listener) {
-		getListeners().add(listener);
+	public synchronized void registerEvents(Listener listener) {
+		if(handlers.containsKey(listener))
+			return;
+		handlers.put(listener, createHandlers(listener));
+		listeners.add(listener);
+		baked.clear();
+	}
+
+	/**
+	 * Unregisters an event listener
+	 *
+	 * @param Listener
+	 */
+	public synchronized void unregisterEvents(Listener listener) {
+		if(handlers.remove(listener) == null)
+			return;
+		listeners.remove(listener);
+		baked.clear();
+		server.getTimings().forget(listener);
+	}
+
+	/**
+	 * Passes an event to every handler registered for its class or a superclass, by priority, then to the JavaScript plugins
+	 *
+	 * @param Event
+	 */
+	public void callEvent(Event event) {
+		if(event instanceof AsyncEvent && server.isPrimaryThread())
+			throw new IllegalStateException(event.getEventName() + " is async and may not be called from the main thread, use callEventAsync()");
+		callHandlers(event);
+		if(hasScriptListeners(event))
+			callScriptEvent(event);
+	}
+
+	private void callHandlers(Event event) {
+		RegisteredHandler[] handlers = getHandlers(event.getClass());
+		Cancellable cancellable = event instanceof Cancellable ? (Cancellable) event : null;
+		for(int i = 0; i < handlers.length; i++) {
+			if(cancellable != null && handlers[i].isIgnoringCancelled() && cancellable.isCanceled())
+				continue;
+			try {
+				handlers[i].callEvent(event);
+			} catch(Throwable t) {
+				server.getLogger().error("Could not pass " + event.getEventName() + " to " + handlers[i].getListener().getClass().getName() + ": " + t);
+				t.printStackTrace();
+			}
+		}
+	}
+
+	private boolean hasScriptListeners(Event event) {
+		return !scriptEvents.isEmpty() && scriptEvents.contains(event.getClass().getSimpleName());
+	}
+
+	/**
+	 * Dispatches an async event on the worker pool. The returned future completes with the event once every handler
+	 * has run, callers continue from it instead of blocking. JavaScript plugins share one script engine with the main
+	 * thread, so their handlers run on the main thread afterwards, on the next scheduler heartbeat.
+	 *
+	 * @param AsyncEvent
+	 * @return CompletableFuture<T>
+	 */
+	public <T extends AsyncEvent> CompletableFuture<T> callEventAsync(T event) {
+		CompletableFuture<T> future = CompletableFuture.supplyAsync(() -> {
+			callHandlers(event);
+			return event;
+		}, RedstoneLamp.getAsync());
+		if(!hasScriptListeners(event))
+			return future;
+		return future.thenCompose(e -> {
+			CompletableFuture<T> scripts = new CompletableFuture<T>();
+			server.getScheduler().runTask(server, () -> {
+				try {
+					callScriptEvent(e);
+				} finally {
+					scripts.complete(e);
+				}
+			});
+			return scripts;
+		});
+	}
+
+	/**
+	 * Returns true if any Java handler or JavaScript plugin could receive events of this class. Callers on hot paths
+	 * use this to skip constructing events nobody listens to.
+	 *
+	 * @param Class<? extends Event>
+	 * @return boolean
+	 */
+	public boolean hasListeners(Class<? extends Event> eventClass) {
+		return getHandlers(eventClass).length != 0 || (!scriptEvents.isEmpty() && scriptEvents.contains(eventClass.getSimpleName()));
+	}
+
+	/**
+	 * INTERNAL METHOD! Records the event functions (onXxxEvent) a JavaScript plugin defines
+	 *
+	 * @param JavaScriptPlugin
+	 */
+	public void registerScriptPlugin(JavaScriptPlugin plugin) {
+		for(String function : plugin.getFunctions()) {
+			if(function.startsWith("on") && function.length() > 2)
+				scriptEvents.add(function.substring(2));
+		}
+	}
+
+	/**
+	 * Returns the handlers for an event class, sorted by priority. The result is computed once per event class.
+	 *
+	 * @param Class<? extends Event>
+	 * @return RegisteredHandler[]
+	 */
+	public RegisteredHandler[] getHandlers(Class<? extends Event> eventClass) {
+		RegisteredHandler[] result = baked.get(eventClass);
+		if(result == null) {
+			result = bake(eventClass);
+		}
+		return result;
+	}
+
+	private synchronized RegisteredHandler[] bake(Class<? extends Event> eventClass) {
+		RegisteredHandler[] result = baked.get(eventClass);
+		if(result != null)
+			return result;
+		List<RegisteredHandler> list = new ArrayList<RegisteredHandler>();
+		for(Listener listener : listeners) {
+			for(RegisteredHandler handler : handlers.get(listener)) {
+				if(handler.handles(eventClass))
+					list.add(handler);
+			}
+		}
+		list.sort(Comparator.comparing(RegisteredHandler::getPriority)); //Stable, keeps registration order within a priority
+		result = list.isEmpty() ? NO_HANDLERS : list.toArray(new RegisteredHandler[list.size()]);
+		baked.put(eventClass, result);
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<RegisteredHandler> createHandlers(Listener listener) {
+		List<RegisteredHandler> list = new ArrayList<RegisteredHandler>();
+		Timing timing = server.getTimings().getListenerTiming(listener);
+		try {
+			Method onEvent = listener.getClass().getMethod("onEvent", Event.class);
+			if(onEvent.getDeclaringClass() != Listener.class) {
+				EventHandler annotation = onEvent.getAnnotation(EventHandler.class);
+				EventPriority priority = annotation != null ? annotation.priority() : EventPriority.NORMAL;
+				boolean ignoreCancelled = annotation != null && annotation.ignoreCancelled();
+				list.add(new RegisteredHandler(listener, Event.class, (l, e) -> l.onEvent(e), timing, priority, ignoreCancelled, false));
+			}
+		} catch(NoSuchMethodException e) {}
+		boolean warned = false;
+		for(Method method : listener.getClass().getDeclaredMethods()) {
+			Class<?>[] params = method.getParameterTypes();
+			if(params.length != 1 || !Event.class.isAssignableFrom(params[0]) || Modifier.isStatic(method.getModifiers()) || method.isSynthetic() || method.isBridge())
+				continue;
+			if(method.getName().equals("onEvent") && params[0] == Event.class)
+				continue;
+			EventHandler annotation = method.getAnnotation(EventHandler.class);
+			if(annotation == null && !warned && RedstoneLamp.yaml != null && RedstoneLamp.yaml.getBoolean("settings", "deprication-warnings", true)) {
+				server.getLogger().warning(listener.getClass().getName() + " uses event handlers without @EventHandler, this is deprecated and will be removed in a future version.");
+				warned = true;
+			}
+			try {
+				Class<? extends Event> eventClass = (Class<? extends Event>) params[0];
+				Timing handlerTiming = timing.getChild(eventClass.getSimpleName());
+				if(annotation != null)
+					list.add(new RegisteredHandler(listener, eventClass, EventExecutor.create(method), handlerTiming, annotation.priority(), annotation.ignoreCancelled(), false));
+				else
+					list.add(new RegisteredHandler(listener, eventClass, EventExecutor.create(method), handlerTiming, EventPriority.NORMAL, false, true));
+			} catch(IllegalAccessException | RuntimeException e) {
+				server.getLogger().error("Could not register " + method.getName() + " of " + listener.getClass().getName() + ": " + e);
+			}
+		}
+		return list;
+	}
+
+	private void callScriptEvent(Event event) {
+		String function = "on" + event.getClass().getSimpleName();
+		List<Object> plugins = server.getPluginManager().getPluginArray();
+		for(int i = 0; i < plugins.size(); i++) {
+			Object o = plugins.get(i);
+			if(o instanceof JavaScriptPlugin && ((JavaScriptPlugin) o).hasFunction(function)) {
+				JavaScriptPlugin plugin = (JavaScriptPlugin) o;
+				Timing pluginTiming = server.getTimings().getPluginTiming(plugin, plugin.getName());
+				pluginTiming.startTiming();
+				try {
+					plugin.call(function, event);
+				} catch(ScriptException e) {
+					e.printStackTrace();
+				} finally {
+					pluginTiming.stopTiming();
+				}
+			}
+		}
 	}
 }
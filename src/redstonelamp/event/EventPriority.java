@@ -0,0 +1,14 @@
+package redstonelamp.event;
+
+/**
+ * Order in which event handlers are called, from LOWEST (first) to MONITOR (last).
+ * MONITOR handlers should only observe the outcome of an event and never modify it.
+ */
+public enum EventPriority {
+	LOWEST,
+	LOW,
+	NORMAL,
+	HIGH,
+	HIGHEST,
+	MONITOR
+}
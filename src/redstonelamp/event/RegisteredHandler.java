@@ -0,0 +1,76 @@
+package redstonelamp.event;
+
+import redstonelamp.timings.Timing;
+
+/**
+ * A handler method of a registered <code>Listener</code>, resolved once at registration time.
+ */
+public class RegisteredHandler {
+	private final Listener listener;
+	private final Class<? extends Event> eventClass;
+	private final EventExecutor executor;
+	private final Timing timing;
+	private final EventPriority priority;
+	private final boolean ignoreCancelled;
+	private final boolean exact;
+
+	public RegisteredHandler(Listener listener, Class<? extends Event> eventClass, EventExecutor executor, Timing timing, EventPriority priority, boolean ignoreCancelled, boolean exact) {
+		this.listener = listener;
+		this.eventClass = eventClass;
+		this.executor = executor;
+		this.timing = timing;
+		this.priority = priority;
+		this.ignoreCancelled = ignoreCancelled;
+		this.exact = exact;
+	}
+
+	/**
+	 * Passes an event to the handler
+	 *
+	 * @param Event
+	 */
+	public void callEvent(Event event) throws Throwable {
+		timing.startTiming();
+		try {
+			executor.execute(listener, event);
+		} finally {
+			timing.stopTiming();
+		}
+	}
+
+	public Listener getListener() {
+		return listener;
+	}
+
+	/**
+	 * Returns the event class this handler was declared for
+	 *
+	 * @return Class<? extends Event>
+	 */
+	public Class<? extends Event> getEventClass() {
+		return eventClass;
+	}
+
+	public EventPriority getPriority() {
+		return priority;
+	}
+
+	/**
+	 * Returns true if the handler is skipped for canceled events
+	 *
+	 * @return boolean
+	 */
+	public boolean isIgnoringCancelled() {
+		return ignoreCancelled;
+	}
+
+	/**
+	 * Returns true if this handler receives events of the given class
+	 *
+	 * @param Class<? extends Event>
+	 * @return boolean
+	 */
+	public boolean handles(Class<? extends Event> clazz) {
+		return exact ? eventClass == clazz : eventClass.isAssignableFrom(clazz);
+	}
+}
@@ -3,18 +3,22 @@ package redstonelamp.event.player;
 import java.util.List;
 
 import redstonelamp.Player;
+import redstonelamp.event.AsyncEvent;
 import redstonelamp.event.Cancellable;
 import redstonelamp.event.Event;
 import redstonelamp.event.Listener;
 
-public class PlayerChatEvent extends Event implements Cancellable {
+/**
+ * Async event called when a player chats. Handlers run on a worker thread, the message is sent on the main thread afterwards.
+ */
+public class PlayerChatEvent extends AsyncEvent implements Cancellable {
 	private Player player;
 	private List<Player> recipents;
 	private String message;
 	private String format;
 	private Event e = this;
 	
-	private boolean canceled;
+	private volatile boolean canceled;
 	
 	public PlayerChatEvent(Player player, String message) {
 		this.player = player;
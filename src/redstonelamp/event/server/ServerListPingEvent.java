@@ -1,9 +1,12 @@
 package redstonelamp.event.server;
 
-import redstonelamp.event.Event;
+import redstonelamp.event.AsyncEvent;
 import redstonelamp.utils.ServerIcon;
 
-public class ServerListPingEvent extends Event {
+/**
+ * Async event called when a client pings the server list. Handlers run on a worker thread.
+ */
+public class ServerListPingEvent extends AsyncEvent {
 	private String tag = null;
 	private int protocol = -1;
 	private int maxPlayers = -1;
@@ -0,0 +1,108 @@
+package redstonelamp.level;
+
+import redstonelamp.PocketPlayer;
+import redstonelamp.Server;
+import redstonelamp.level.location.ChunkLocation;
+import redstonelamp.network.packet.UpdateBlockPacket;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects the block changes of a tick per chunk, and sends each changed chunk as one <code>UpdateBlockPacket</code>
+ * with all its records to the players viewing it.
+ * <br>
+ * Chunks with more changes than the threshold are sent again as a whole instead. Only the last change of a block in a
+ * tick is sent. Every method must be called on the main thread.
+ */
+public class BlockChangeAggregator {
+    private final Server server;
+    private final ChunkPipeline pipeline;
+    private final int resendThreshold;
+
+    private final Map<ChunkLocation, Map<Integer, UpdateBlockPacket.Record>> changes = new LinkedHashMap<>();
+
+    private long packets = 0;
+    private long records = 0;
+    private long resends = 0;
+
+    /**
+     * Create a new BlockChangeAggregator.
+     * @param server The Server.
+     * @param pipeline The ChunkPipeline knowing the viewers of chunks and used for full resends.
+     * @param resendThreshold The amount of changed blocks in one chunk above which the chunk is sent again as a whole.
+     */
+    public BlockChangeAggregator(Server server, ChunkPipeline pipeline, int resendThreshold){
+        this.server = server;
+        this.pipeline = pipeline;
+        this.resendThreshold = resendThreshold;
+    }
+
+    /**
+     * Records a block change, replacing an earlier change of the same block in this tick.
+     * @param x The X coordinate.
+     * @param y The Y coordinate (0-127).
+     * @param z The Z coordinate.
+     * @param id The block ID.
+     * @param data The block meta.
+     * @param flags The update flags, see <code>UpdateBlockPacket.FLAG_*</code>.
+     */
+    public void record(int x, int y, int z, byte id, byte data, byte flags){
+        UpdateBlockPacket.Record r = new UpdateBlockPacket.Record();
+        r.x = x;
+        r.y = (byte) y;
+        r.z = z;
+        r.blockId = id;
+        r.blockData = data;
+        r.flags = flags;
+        int key = (x & 0x0F) << 11 | (z & 0x0F) << 7 | (y & 0x7F);
+        changes.computeIfAbsent(new ChunkLocation(x >> 4, z >> 4), c -> new LinkedHashMap<>()).put(key, r);
+    }
+
+    /**
+     * Sends the changes recorded since the last flush.
+     */
+    public void flush(){
+        if(changes.isEmpty()){
+            return;
+        }
+        for(Map.Entry<ChunkLocation, Map<Integer, UpdateBlockPacket.Record>> entry : changes.entrySet()){
+            ChunkLocation location = entry.getKey();
+            Map<Integer, UpdateBlockPacket.Record> blocks = entry.getValue();
+            Set<PocketPlayer> viewers = pipeline.getViewers(location);
+            if(viewers.isEmpty()){
+                continue;
+            }
+            //A chunk in flight may have been read before the change, so it is prepared again as well
+            if((blocks.size() > resendThreshold || pipeline.isInFlight(location)) && pipeline.resend(location)){
+                resends++;
+                continue;
+            }
+            UpdateBlockPacket ubp = UpdateBlockPacket.POOL.acquire();
+            ubp.records = new ArrayList<>(blocks.values());
+            server.getNetwork().broadcastPacket(ubp, viewers);
+            ubp.release();
+            packets++;
+            records += blocks.size();
+        }
+        changes.clear();
+    }
+
+    /**
+     * Returns the amount of <code>UpdateBlockPacket</code>s built, each sent to every viewer of its chunk.
+     * @return long
+     */
+    public long getPacketCount(){
+        return packets;
+    }
+
+    public long getRecordCount(){
+        return records;
+    }
+
+    public long getResendCount(){
+        return resends;
+    }
+}
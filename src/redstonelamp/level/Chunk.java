@@ -1,5 +1,7 @@
 package redstonelamp.level;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Represents a 16 * 16 * 128 chunk section.
  */
@@ -15,6 +17,8 @@ public class Chunk {
     private byte[] heightmap;
     private byte[] biomeColors;
 
+    private final AtomicInteger version = new AtomicInteger();
+
     public Chunk(){}
 
     public Chunk(byte[] blockIds, byte[] blockMeta, byte[] skylight, byte[] blocklight, byte[] heightmap, byte[] biomeColors){
@@ -52,25 +56,87 @@ public class Chunk {
 
     public void setBlockIds(byte[] blockIds) {
         this.blockIds = blockIds;
+        markModified();
     }
 
     public void setBlockMeta(byte[] blockMeta) {
         this.blockMeta = blockMeta;
+        markModified();
     }
 
     public void setSkylight(byte[] skylight) {
         this.skylight = skylight;
+        markModified();
     }
 
     public void setBlocklight(byte[] blocklight) {
         this.blocklight = blocklight;
+        markModified();
     }
 
     public void setHeightmap(byte[] heightmap) {
         this.heightmap = heightmap;
+        markModified();
     }
 
     public void setBiomeColors(byte[] biomeColors) {
         this.biomeColors = biomeColors;
+        markModified();
+    }
+
+    /**
+     * Returns the block ID at a position in this chunk.
+     * @param x The X coordinate in the chunk (0-15).
+     * @param y The Y coordinate (0-127).
+     * @param z The Z coordinate in the chunk (0-15).
+     * @return The block ID.
+     */
+    public byte getBlockId(int x, int y, int z) {
+        return blockIds[getIndex(x, y, z)];
+    }
+
+    public byte getBlockData(int x, int y, int z) {
+        int index = getIndex(x, y, z);
+        byte b = blockMeta[index >> 1];
+        return (byte) ((index & 1) == 0 ? b & 0x0F : (b >> 4) & 0x0F);
+    }
+
+    /**
+     * Changes the block at a position in this chunk, and marks the chunk as modified.
+     * @param x The X coordinate in the chunk (0-15).
+     * @param y The Y coordinate (0-127).
+     * @param z The Z coordinate in the chunk (0-15).
+     * @param id The block ID.
+     * @param data The block meta (0-15).
+     */
+    public void setBlock(int x, int y, int z, byte id, byte data) {
+        int index = getIndex(x, y, z);
+        blockIds[index] = id;
+        int metaIndex = index >> 1;
+        if((index & 1) == 0){
+            blockMeta[metaIndex] = (byte) ((blockMeta[metaIndex] & 0xF0) | (data & 0x0F));
+        } else {
+            blockMeta[metaIndex] = (byte) (((data & 0x0F) << 4) | (blockMeta[metaIndex] & 0x0F));
+        }
+        markModified();
+    }
+
+    private static int getIndex(int x, int y, int z) {
+        return (x << 11) | (z << 7) | y; //MCPE terrain order: XZY
+    }
+
+    /**
+     * Returns the modification counter of this chunk, increased on every change. Used to invalidate cached chunk data.
+     * @return int
+     */
+    public int getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Marks this chunk as changed. Call this after modifying one of the arrays in place.
+     */
+    public void markModified() {
+        version.incrementAndGet();
     }
 }
@@ -0,0 +1,134 @@
+package redstonelamp.level;
+
+import redstonelamp.level.location.ChunkLocation;
+import redstonelamp.network.packet.EncodedPacket;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of the compressed chunk packets sent to MCPE players, so players loading the same area share the same bytes.
+ * <br>
+ * Entries are tagged with the <code>Chunk.getVersion()</code> they were built from and are dropped once the chunk
+ * changed. The cache is bounded by the total size of the packets, the least recently used entries are evicted first.
+ */
+public class ChunkPacketCache {
+    private final long maxBytes;
+    private final LinkedHashMap<ChunkLocation, Entry> entries = new LinkedHashMap<>(128, 0.75f, true);
+    private long bytes = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Create a new ChunkPacketCache.
+     * @param maxBytes The total size of cached packets after which entries are evicted.
+     */
+    public ChunkPacketCache(long maxBytes){
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cached packet of a chunk, if it was built from this version.
+     * @param location The location of the chunk.
+     * @param version The current version of the chunk.
+     * @return The packet, or null.
+     */
+    public synchronized EncodedPacket get(ChunkLocation location, int version){
+        Entry entry = entries.get(location);
+        if(entry == null){
+            misses++;
+            return null;
+        }
+        if(entry.version != version){
+            remove(location);
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.packet;
+    }
+
+    /**
+     * Caches the packet of a chunk, replacing older versions.
+     * @param location The location of the chunk.
+     * @param version The version of the chunk the packet was built from.
+     * @param packet The packet.
+     */
+    public synchronized void put(ChunkLocation location, int version, EncodedPacket packet){
+        if(packet.getLength() > maxBytes){
+            return;
+        }
+        Entry old = entries.get(location);
+        if(old != null && old.version - version > 0){
+            return; //A newer version was already cached
+        }
+        remove(location);
+        //ChunkLocation is mutable, so the key is a private copy
+        entries.put(new ChunkLocation(location.getX(), location.getZ()), new Entry(version, packet));
+        bytes += packet.getLength();
+
+        Iterator<Map.Entry<ChunkLocation, Entry>> iterator = entries.entrySet().iterator();
+        while(bytes > maxBytes && iterator.hasNext()){
+            bytes -= iterator.next().getValue().packet.getLength();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Drops the cached packet of a chunk.
+     * @param location The location of the chunk.
+     */
+    public synchronized void invalidate(ChunkLocation location){
+        remove(location);
+    }
+
+    public synchronized void clear(){
+        entries.clear();
+        bytes = 0;
+    }
+
+    private void remove(ChunkLocation location){
+        Entry entry = entries.remove(location);
+        if(entry != null){
+            bytes -= entry.packet.getLength();
+        }
+    }
+
+    public synchronized int size(){
+        return entries.size();
+    }
+
+    /**
+     * Returns the total size of the cached packets.
+     * @return long
+     */
+    public synchronized long getBytes(){
+        return bytes;
+    }
+
+    public synchronized long getHitCount(){
+        return hits;
+    }
+
+    public synchronized long getMissCount(){
+        return misses;
+    }
+
+    public synchronized long getEvictionCount(){
+        return evictions;
+    }
+
+    private static class Entry {
+        private final int version;
+        private final EncodedPacket packet;
+
+        private Entry(int version, EncodedPacket packet){
+            this.version = version;
+            this.packet = packet;
+        }
+    }
+}
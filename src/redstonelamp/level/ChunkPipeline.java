@@ -0,0 +1,364 @@
+package redstonelamp.level;
+
+import redstonelamp.Player;
+import redstonelamp.PocketPlayer;
+import redstonelamp.Server;
+import redstonelamp.level.location.ChunkLocation;
+import redstonelamp.network.packet.BatchPacket;
+import redstonelamp.network.packet.EncodedPacket;
+import redstonelamp.network.packet.FullChunkDataPacket;
+import redstonelamp.utils.BufferPool;
+import redstonelamp.utils.DynamicByteBuffer;
+
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends queued chunks to players through a staged pipeline: chunks are loaded from the provider on the I/O worker,
+ * serialized and compressed on the compression workers, and the main thread only sends the finished packets.
+ * <br>
+ * The amount of chunks in flight is capped per player and in total, so the worker queues stay bounded and a slow
+ * pipeline delays chunk sending instead of the tick. Every method except the workers' must be called on the main thread.
+ */
+public class ChunkPipeline {
+    private final Level level;
+    private final Server server;
+    private final ChunkPacketCache cache;
+    private final int maxPerPlayer;
+    private final int maxInFlight;
+
+    private final ThreadPoolExecutor loadExecutor;
+    private final ThreadPoolExecutor compressExecutor;
+    private final Queue<Job> ready = new ConcurrentLinkedQueue<>();
+
+    private final Map<Player, Session> sessions = new LinkedHashMap<>();
+    private final Map<ChunkLocation, Job> jobs = new HashMap<>();
+    private final Map<ChunkLocation, Set<PocketPlayer>> viewers = new HashMap<>();
+    private final Map<Player, Set<ChunkLocation>> viewing = new HashMap<>();
+
+    /**
+     * Create a new ChunkPipeline.
+     * @param level The Level the chunks are loaded from.
+     * @param cache The cache of compressed chunk packets.
+     * @param workers The amount of compression threads.
+     * @param maxPerPlayer The amount of chunks a single player may have in flight.
+     * @param maxInFlight The amount of chunks all players together may have in flight.
+     */
+    public ChunkPipeline(Level level, ChunkPacketCache cache, int workers, int maxPerPlayer, int maxInFlight){
+        this.level = level;
+        this.server = level.getServer();
+        this.cache = cache;
+        this.maxPerPlayer = maxPerPlayer;
+        this.maxInFlight = maxInFlight;
+        //Admission is limited to maxInFlight jobs, so the queues never fill up
+        loadExecutor = createExecutor("Chunk I/O", 1);
+        compressExecutor = createExecutor("Chunk Compression", workers);
+    }
+
+    private ThreadPoolExecutor createExecutor(String name, int threads){
+        AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(maxInFlight), r -> {
+            Thread thread = new Thread(r, name + " #" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues chunks to be sent to a player.
+     * @param player The Player.
+     * @param chunks The chunks, in the order they should be sent.
+     */
+    public void queue(Player player, List<ChunkLocation> chunks){
+        if(sessions.containsKey(player)){
+            throw new IllegalArgumentException("Chunks already queued.");
+        }
+        sessions.put(player, new Session(chunks));
+    }
+
+    /**
+     * Drops the queued chunks of a player and forgets the chunks it was sent. Chunks already in flight are finished,
+     * but not sent to this player.
+     * @param player The Player.
+     */
+    public void clear(Player player){
+        sessions.remove(player);
+        Set<ChunkLocation> chunks = viewing.remove(player);
+        if(chunks != null){
+            for(ChunkLocation location : chunks){
+                Set<PocketPlayer> players = viewers.get(location);
+                if(players != null){
+                    players.remove(player);
+                    if(players.isEmpty()){
+                        viewers.remove(location);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the MCPE players that were sent a chunk, or have it in flight.
+     * @param location The location of the chunk.
+     * @return Set<PocketPlayer>
+     */
+    public Set<PocketPlayer> getViewers(ChunkLocation location){
+        Set<PocketPlayer> players = viewers.get(location);
+        return players == null ? Collections.emptySet() : Collections.unmodifiableSet(players);
+    }
+
+    public boolean isInFlight(ChunkLocation location){
+        return jobs.containsKey(location);
+    }
+
+    /**
+     * Sends a chunk again to its viewers, compressed on the workers. A job already in flight for the chunk is restarted
+     * once it finished, as it may have read the chunk before the change.
+     * @param location The location of the chunk.
+     * @return False if the pipeline is full, nothing is sent then.
+     */
+    public boolean resend(ChunkLocation location){
+        Set<PocketPlayer> players = viewers.get(location);
+        if(players == null || players.isEmpty()){
+            return true;
+        }
+        Job job = jobs.get(location);
+        if(job != null){
+            job.stale = true;
+            job.resend.addAll(players);
+            return true;
+        }
+        if(jobs.size() >= maxInFlight){
+            return false;
+        }
+        job = new Job(new ChunkLocation(location.getX(), location.getZ()), players.iterator().next());
+        job.resend.addAll(players);
+        jobs.put(job.location, job);
+        submit(job, level.getLoadedChunk(location));
+        return true;
+    }
+
+    private void addViewer(Player player, ChunkLocation location){
+        if(player instanceof PocketPlayer){
+            ChunkLocation key = new ChunkLocation(location.getX(), location.getZ());
+            viewers.computeIfAbsent(key, l -> new LinkedHashSet<>()).add((PocketPlayer) player);
+            viewing.computeIfAbsent(player, p -> new HashSet<>()).add(key);
+        }
+    }
+
+    public boolean isQueued(Player player){
+        return sessions.containsKey(player);
+    }
+
+    /**
+     * Sends the finished chunks, starts new ones, and spawns players whose chunks are all sent.
+     */
+    public void tick(){
+        drain();
+        if(sessions.isEmpty()){
+            return;
+        }
+        dispatch();
+
+        List<Player> done = new ArrayList<>();
+        Iterator<Map.Entry<Player, Session>> iterator = sessions.entrySet().iterator();
+        while(iterator.hasNext()){
+            Map.Entry<Player, Session> entry = iterator.next();
+            if(entry.getValue().chunks.isEmpty() && entry.getValue().inFlight == 0){
+                iterator.remove();
+                done.add(entry.getKey());
+            }
+        }
+        for(Player player : done){
+            if(player instanceof PocketPlayer){
+                ((PocketPlayer) player).doFirstSpawn(); //TODO
+            }
+        }
+    }
+
+    private void drain(){
+        Job job;
+        while((job = ready.poll()) != null){
+            if(job.stale && job.error == null){
+                //The chunk changed while this job was in flight, prepare it again
+                job.stale = false;
+                job.packet = null;
+                submit(job, level.getLoadedChunk(job.location));
+                continue;
+            }
+            jobs.remove(job.location, job);
+            if(job.packet != null){
+                cache.put(job.location, job.version, job.packet);
+            } else {
+                server.getLogger().warning("Failed to prepare "+job.location+": "+job.error);
+            }
+            for(Player player : job.players){
+                Session session = sessions.get(player);
+                if(session != null){
+                    session.inFlight--;
+                }
+                if(job.packet != null){
+                    player.sendDataPacket(job.packet);
+                }
+            }
+            if(job.packet != null){
+                for(Player player : job.resend){
+                    if(!job.players.contains(player) && viewers.getOrDefault(job.location, Collections.emptySet()).contains(player)){
+                        player.sendDataPacket(job.packet);
+                    }
+                }
+            }
+        }
+    }
+
+    private void dispatch(){
+        //Round robin, one chunk per player per pass, so one player can not starve the others
+        boolean progress = true;
+        while(progress && jobs.size() < maxInFlight){
+            progress = false;
+            for(Map.Entry<Player, Session> entry : sessions.entrySet()){
+                if(jobs.size() >= maxInFlight){
+                    break;
+                }
+                Session session = entry.getValue();
+                if(session.inFlight >= maxPerPlayer || session.chunks.isEmpty()){
+                    continue;
+                }
+                request(entry.getKey(), session, session.chunks.poll());
+                progress = true;
+            }
+        }
+    }
+
+    private void request(Player player, Session session, ChunkLocation location){
+        Chunk chunk = level.getLoadedChunk(location);
+        addViewer(player, location);
+        if(!(player instanceof PocketPlayer)){
+            FullChunkDataPacket dp = new FullChunkDataPacket();
+            dp.x = location.getX();
+            dp.z = location.getZ();
+            dp.payload = player.orderChunk(chunk != null ? chunk : level.getChunkAt(location));
+            player.sendDataPacket(dp);
+            return;
+        }
+        if(chunk != null){
+            EncodedPacket cached = cache.get(location, chunk.getVersion());
+            if(cached != null){
+                player.sendDataPacket(cached);
+                return;
+            }
+        }
+
+        Job job = jobs.get(location);
+        if(job == null){
+            job = new Job(new ChunkLocation(location.getX(), location.getZ()), player);
+            jobs.put(job.location, job);
+            submit(job, chunk);
+        }
+        job.players.add(player);
+        session.inFlight++;
+    }
+
+    private void submit(Job job, Chunk loaded){
+        if(loaded != null){
+            compressExecutor.execute(() -> compress(job, loaded));
+            return;
+        }
+        loadExecutor.execute(() -> {
+            Chunk chunk;
+            try {
+                chunk = level.getChunkAt(job.location);
+            } catch(Throwable t) {
+                job.error = t;
+                ready.add(job);
+                return;
+            }
+            EncodedPacket cached = cache.get(job.location, chunk.getVersion());
+            if(cached != null){
+                job.version = chunk.getVersion();
+                job.packet = cached;
+                ready.add(job);
+            } else {
+                compressExecutor.execute(() -> compress(job, chunk));
+            }
+        });
+    }
+
+    private void compress(Job job, Chunk chunk){
+        BufferPool pool = BufferPool.getEncodePool();
+        DynamicByteBuffer bb = pool.acquire(ByteOrder.BIG_ENDIAN);
+        try {
+            //Read the version first, a change during serialization only makes the cached copy stale
+            job.version = chunk.getVersion();
+            FullChunkDataPacket dp = new FullChunkDataPacket();
+            dp.x = job.location.getX();
+            dp.z = job.location.getZ();
+            dp.payload = job.serializer.orderChunk(chunk);
+            dp.encode(bb);
+            job.packet = BatchPacket.compress(bb.array(), 0, bb.size(), dp.getChannel());
+        } catch(Throwable t) {
+            job.error = t;
+        } finally {
+            pool.release(bb);
+        }
+        ready.add(job);
+    }
+
+    /**
+     * Returns the amount of chunks being loaded or compressed.
+     * @return int
+     */
+    public int getInFlightCount(){
+        return jobs.size();
+    }
+
+    public void shutdown(){
+        loadExecutor.shutdownNow();
+        compressExecutor.shutdownNow();
+    }
+
+    private static class Session {
+        private final Queue<ChunkLocation> chunks;
+        private int inFlight = 0;
+
+        private Session(List<ChunkLocation> chunks){
+            this.chunks = new ArrayDeque<>(chunks);
+        }
+    }
+
+    private static class Job {
+        private final ChunkLocation location;
+        private final Player serializer;
+        private final List<Player> players = new ArrayList<>();
+        private final Set<Player> resend = new LinkedHashSet<>();
+
+        //Written by the workers, published through the ready queue
+        private int version;
+        private EncodedPacket packet;
+        private Throwable error;
+
+        //Main thread only
+        private boolean stale = false;
+
+        private Job(ChunkLocation location, Player serializer){
+            this.location = location;
+            this.serializer = serializer;
+        }
+    }
+}
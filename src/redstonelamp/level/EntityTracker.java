@@ -0,0 +1,203 @@
+package redstonelamp.level;
+
+import redstonelamp.Player;
+import redstonelamp.entity.Entity;
+import redstonelamp.level.location.ChunkLocation;
+import redstonelamp.level.location.Location;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decides which players see which entities of a level. Every tracked player subscribes to the chunks within the
+ * tracking range around it, and an entity is spawned to the subscribers of the chunk it is in.
+ * <br>
+ * Subscriptions and viewers are only updated when an entity crosses a chunk border, so moving within a chunk costs
+ * nothing, and movement only reaches nearby players. Every method must be called on the main thread.
+ */
+public class EntityTracker {
+    private final int range;
+
+    private final Map<ChunkLocation, Set<Entity>> chunkEntities = new HashMap<>();
+    private final Map<ChunkLocation, Set<Player>> subscribers = new HashMap<>();
+    private final Map<Entity, ChunkLocation> tracked = new HashMap<>();
+
+    /**
+     * Create a new EntityTracker.
+     * @param range The tracking range in chunks around a player, 0 means only its own chunk.
+     */
+    public EntityTracker(int range){
+        this.range = Math.max(0, range);
+    }
+
+    /**
+     * Starts tracking an entity: spawns it to the players in range, and if it is a player, spawns the entities in range to it.
+     * @param entity The Entity, with a location on this level.
+     */
+    public void add(Entity entity){
+        if(tracked.containsKey(entity) || entity.getLocation() == null){
+            return;
+        }
+        ChunkLocation chunk = getChunk(entity.getLocation());
+        tracked.put(entity, chunk);
+        chunkEntities.computeIfAbsent(chunk, c -> new LinkedHashSet<>()).add(entity);
+        for(Player player : getSubscribers(chunk)){
+            spawn(entity, player);
+        }
+        if(entity instanceof Player){
+            subscribe((Player) entity, chunk, null);
+        }
+    }
+
+    /**
+     * Updates the viewers of an entity after it moved. Only does work when the entity entered another chunk.
+     * @param entity The Entity.
+     */
+    public void move(Entity entity){
+        ChunkLocation from = tracked.get(entity);
+        if(from == null || entity.getLocation() == null){
+            return;
+        }
+        ChunkLocation to = getChunk(entity.getLocation());
+        if(from.equals(to)){
+            return;
+        }
+        tracked.put(entity, to);
+        removeFromChunk(entity, from);
+        chunkEntities.computeIfAbsent(to, c -> new LinkedHashSet<>()).add(entity);
+
+        Set<Player> now = getSubscribers(to);
+        for(Player player : new ArrayList<>(entity.getViewers())){
+            if(player != entity && !now.contains(player)){
+                entity.despawnFrom(player);
+            }
+        }
+        for(Player player : now){
+            spawn(entity, player);
+        }
+        if(entity instanceof Player){
+            subscribe((Player) entity, to, from);
+            unsubscribe((Player) entity, from, to);
+        }
+    }
+
+    /**
+     * Stops tracking an entity: despawns it from its viewers, and if it is a player, despawns the entities it sees from it.
+     * @param entity The Entity.
+     */
+    public void remove(Entity entity){
+        ChunkLocation chunk = tracked.remove(entity);
+        if(chunk == null){
+            return;
+        }
+        removeFromChunk(entity, chunk);
+        for(Player player : new ArrayList<>(entity.getViewers())){
+            if(player != entity){
+                entity.despawnFrom(player);
+            }
+        }
+        if(entity instanceof Player){
+            unsubscribe((Player) entity, chunk, null);
+        }
+    }
+
+    public boolean isTracked(Entity entity){
+        return tracked.containsKey(entity);
+    }
+
+    /**
+     * Returns the players subscribed to a chunk, that is the players that see entities in it.
+     * @param chunk The location of the chunk.
+     * @return Set<Player>
+     */
+    public Set<Player> getSubscribers(ChunkLocation chunk){
+        Set<Player> players = subscribers.get(chunk);
+        return players == null ? Collections.emptySet() : Collections.unmodifiableSet(players);
+    }
+
+    public int getTrackedCount(){
+        return tracked.size();
+    }
+
+    public int getRange(){
+        return range;
+    }
+
+    /**
+     * Subscribes a player to the chunks in range of <code>center</code> that are not in range of <code>previous</code>,
+     * and spawns their entities to it.
+     */
+    private void subscribe(Player player, ChunkLocation center, ChunkLocation previous){
+        for(ChunkLocation chunk : getChunksInRange(center, previous)){
+            subscribers.computeIfAbsent(chunk, c -> new LinkedHashSet<>()).add(player);
+            Set<Entity> entities = chunkEntities.get(chunk);
+            if(entities != null){
+                for(Entity entity : entities){
+                    spawn(entity, player);
+                }
+            }
+        }
+    }
+
+    /**
+     * Unsubscribes a player from the chunks in range of <code>center</code> that are not in range of <code>current</code>,
+     * and despawns their entities from it.
+     */
+    private void unsubscribe(Player player, ChunkLocation center, ChunkLocation current){
+        for(ChunkLocation chunk : getChunksInRange(center, current)){
+            Set<Player> players = subscribers.get(chunk);
+            if(players != null){
+                players.remove(player);
+                if(players.isEmpty()){
+                    subscribers.remove(chunk);
+                }
+            }
+            Set<Entity> entities = chunkEntities.get(chunk);
+            if(entities != null){
+                for(Entity entity : entities){
+                    if(entity != player && entity.getViewers().contains(player)){
+                        entity.despawnFrom(player);
+                    }
+                }
+            }
+        }
+    }
+
+    private void spawn(Entity entity, Player player){
+        if(entity != player && !entity.getViewers().contains(player)){
+            entity.spawnTo(player);
+        }
+    }
+
+    private void removeFromChunk(Entity entity, ChunkLocation chunk){
+        Set<Entity> entities = chunkEntities.get(chunk);
+        if(entities != null){
+            entities.remove(entity);
+            if(entities.isEmpty()){
+                chunkEntities.remove(chunk);
+            }
+        }
+    }
+
+    private List<ChunkLocation> getChunksInRange(ChunkLocation center, ChunkLocation exclude){
+        List<ChunkLocation> chunks = new ArrayList<>((2 * range + 1) * (2 * range + 1));
+        for(int x = center.getX() - range; x <= center.getX() + range; x++){
+            for(int z = center.getZ() - range; z <= center.getZ() + range; z++){
+                if(exclude != null && Math.abs(x - exclude.getX()) <= range && Math.abs(z - exclude.getZ()) <= range){
+                    continue;
+                }
+                chunks.add(new ChunkLocation(x, z));
+            }
+        }
+        return chunks;
+    }
+
+    private static ChunkLocation getChunk(Location location){
+        return new ChunkLocation((int) Math.floor(location.getX()) >> 4, (int) Math.floor(location.getZ()) >> 4);
+    }
+}
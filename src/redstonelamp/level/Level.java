@@ -1,17 +1,20 @@
 package redstonelamp.level;
 
 import redstonelamp.Player;
-import redstonelamp.PocketPlayer;
 import redstonelamp.RedstoneLamp;
 import redstonelamp.Server;
+import redstonelamp.entity.Entity;
 import redstonelamp.level.generator.FlatGenerator;
 import redstonelamp.level.location.ChunkLocation;
 import redstonelamp.level.location.Location;
 import redstonelamp.level.provider.leveldb.LevelDBProvider;
-import redstonelamp.network.packet.FullChunkDataPacket;
 import redstonelamp.network.packet.MovePlayerPacket;
+import redstonelamp.network.packet.UpdateBlockPacket;
+import redstonelamp.timings.Timing;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
@@ -20,22 +23,44 @@ import java.util.concurrent.*;
  * Base level class.
  */
 public class Level {
-    public static int CHUNKS_PER_TICK = 2;
-
     private String name;
 
     private Server server;
     private LevelProvider provider;
-    private Map<Player, List<ChunkLocation>> chunksToSend = new ConcurrentHashMap<>();
     private Map<ChunkLocation, Chunk> chunksLoaded = new ConcurrentHashMap<>();
+    private final ChunkPacketCache chunkCache;
+    private final ChunkPipeline chunkPipeline;
+    private final EntityTracker entityTracker;
+    private final MovementCoalescer movement;
+    private final BlockChangeAggregator blockChanges;
 
     private int gamemode;
     private long time;
     private Location spawnLocation;
 
+    private Timing chunkSendTiming;
+    private Timing movementTiming;
+    private Timing blockUpdateTiming;
+
     public Level(Server server){
         this.server = server;
         this.name = getDefaultWorldDataFolder().getName();
+        chunkSendTiming = server.getTimings().getLevelTickTiming().getChild("Chunk Sending");
+        movementTiming = server.getTimings().getLevelTickTiming().getChild("Movement");
+        blockUpdateTiming = server.getTimings().getLevelTickTiming().getChild("Block Updates");
+        int cacheSize = RedstoneLamp.yaml == null ? 32 : RedstoneLamp.yaml.getInt("network", "chunk-cache-size", 32);
+        chunkCache = new ChunkPacketCache(cacheSize * 1024L * 1024L);
+        int workers = RedstoneLamp.yaml == null ? 2 : RedstoneLamp.yaml.getInt("network", "chunk-workers", 2);
+        int perPlayer = RedstoneLamp.yaml == null ? 8 : RedstoneLamp.yaml.getInt("network", "chunks-per-player", 8);
+        int inFlight = RedstoneLamp.yaml == null ? 64 : RedstoneLamp.yaml.getInt("network", "max-chunks-in-flight", 64);
+        chunkPipeline = new ChunkPipeline(this, chunkCache, workers, perPlayer, inFlight);
+        entityTracker = new EntityTracker(RedstoneLamp.yaml == null ? 4 : RedstoneLamp.yaml.getInt("settings", "entity-tracking-range", 4));
+        double minDistance = RedstoneLamp.yaml == null ? 0.01 : RedstoneLamp.yaml.getDouble("network", "movement-min-distance", 0.01);
+        double minRotation = RedstoneLamp.yaml == null ? 1 : RedstoneLamp.yaml.getDouble("network", "movement-min-rotation", 1);
+        int keyframeTicks = RedstoneLamp.yaml == null ? 20 : RedstoneLamp.yaml.getInt("network", "movement-keyframe-ticks", 20);
+        movement = new MovementCoalescer(server, minDistance, (float) minRotation, keyframeTicks);
+        int resendThreshold = RedstoneLamp.yaml == null ? 64 : RedstoneLamp.yaml.getInt("network", "block-resend-threshold", 64);
+        blockChanges = new BlockChangeAggregator(server, chunkPipeline, resendThreshold);
         try {
             provider = new LevelDBProvider(this, new FlatGenerator(), new File(getDefaultWorldDataFolder()+File.separator+"db"));
             provider.loadLevelData(new File(getDefaultWorldDataFolder() + File.separator + "level.dat"));
@@ -89,85 +114,99 @@ public class Level {
     }
 
     public boolean isChunkLoaded(ChunkLocation location){
-        for(ChunkLocation loc : chunksLoaded.keySet()){
-            if(loc.getX() == location.getX() && loc.getZ() == location.getZ()){
-                return true;
-            }
-        }
-        return false;
+        return chunksLoaded.containsKey(location);
     }
 
-    private Chunk getLoadedChunkAt(ChunkLocation location) {
-        for(ChunkLocation loc : chunksLoaded.keySet()){
-            if(loc.getX() == location.getX() && loc.getZ() == location.getZ()){
-                return chunksLoaded.get(loc);
-            }
-        }
-        return null;
+    /**
+     * Returns a chunk if it is loaded, without loading it.
+     * @param location The location of the chunk.
+     * @return The Chunk, or null.
+     */
+    Chunk getLoadedChunk(ChunkLocation location) {
+        return chunksLoaded.get(location);
     }
 
     public void tick(){
-        if(chunksToSend.keySet().isEmpty()){
-            return;
+        chunkSendTiming.startTiming();
+        try {
+            chunkPipeline.tick();
+        } finally {
+            chunkSendTiming.stopTiming();
         }
-        int sent = 0;
-        int pLimit = CHUNKS_PER_TICK;
-        if(chunksToSend.keySet().size() > 1){
-            pLimit = CHUNKS_PER_TICK / chunksToSend.keySet().size();
-            if(pLimit == 0){
-                pLimit = 1;
-            }
+        movementTiming.startTiming();
+        try {
+            movement.flush();
+        } finally {
+            movementTiming.stopTiming();
         }
-        for(Player player : chunksToSend.keySet()){
-            if(sent >= CHUNKS_PER_TICK) break;
-
-            int pSent = 0;
-            List<ChunkLocation> chunks = chunksToSend.get(player);
-            for(ChunkLocation location : chunks){
-                if(pSent >= pLimit) break;
-
-                byte[] data = player.orderChunk(getChunkAt(location));
-                FullChunkDataPacket dp = new FullChunkDataPacket();
-                dp.x = location.getX();
-                dp.z = location.getZ();
-                dp.payload = data;
-                player.sendDataPacket(dp);
-                chunks.remove(location);
-                sent++;
-                pSent++;
-            }
-            if(!chunks.isEmpty()){
-                chunksToSend.put(player, chunks);
-            } else {
-                ((PocketPlayer) player).doFirstSpawn(); //TODO
-                chunksToSend.remove(player);
-            }
+        blockUpdateTiming.startTiming();
+        try {
+            blockChanges.flush();
+        } finally {
+            blockUpdateTiming.stopTiming();
         }
     }
 
+    /**
+     * Returns a chunk, loading it from the provider if needed. Can be called from any thread.
+     * @param location The location of the chunk.
+     * @return Chunk
+     */
     public Chunk getChunkAt(ChunkLocation location) {
-        Chunk c = getLoadedChunkAt(location);
+        Chunk c = chunksLoaded.get(location);
         if(c == null){
-            loadChunk(location);
-            return getChunkAt(location);
+            c = chunksLoaded.computeIfAbsent(new ChunkLocation(location.getX(), location.getZ()), provider::getChunk);
         }
         return c;
     }
 
+    /**
+     * Changes a block. The change is sent to the players viewing the chunk at the end of the level tick, together with
+     * the other changes of the chunk in this tick.
+     * @param x The X coordinate.
+     * @param y The Y coordinate (0-127).
+     * @param z The Z coordinate.
+     * @param id The block ID.
+     * @param data The block meta.
+     */
+    public void setBlock(int x, int y, int z, byte id, byte data){
+        if(y < 0 || y > 127){
+            return;
+        }
+        Chunk chunk = getLoadedChunk(new ChunkLocation(x >> 4, z >> 4));
+        if(chunk != null && chunk.getBlockIds() != null){
+            chunk.setBlock(x & 0x0F, y, z & 0x0F, id, data);
+        }
+        blockChanges.record(x, y, z, id, data, UpdateBlockPacket.FLAG_ALL_PRIORITY);
+    }
+
+    /**
+     * Returns the aggregator of the block changes sent on this level.
+     * @return BlockChangeAggregator
+     */
+    public BlockChangeAggregator getBlockChanges() {
+        return blockChanges;
+    }
+
     public void unloadChunk(ChunkLocation location){
-        Chunk c = getLoadedChunkAt(location);
+        Chunk c = getLoadedChunk(location);
         if(c == null){
             throw new IllegalArgumentException("Chunk "+location+" not loaded!");
         }
-        chunksLoaded.remove(c);
+        chunksLoaded.remove(location);
+        chunkCache.invalidate(location);
     }
 
-    public void queueLoginChunks(Player player){
-        if(chunksToSend.containsKey(player)){
-            throw new IllegalArgumentException("Chunks already queued.");
-        }
+    /**
+     * Returns the cache of compressed chunk packets of this level.
+     * @return ChunkPacketCache
+     */
+    public ChunkPacketCache getChunkCache() {
+        return chunkCache;
+    }
 
-        List<ChunkLocation> chunks = new CopyOnWriteArrayList<>();
+    public void queueLoginChunks(Player player){
+        List<ChunkLocation> chunks = new ArrayList<>();
         int centerX = (int) player.getLocation().getX();
         int centerZ = (int) player.getLocation().getZ();
 
@@ -196,15 +235,15 @@ public class Level {
             e.printStackTrace();
         }
 
-        chunksToSend.put(player, chunks);
+        chunkPipeline.queue(player, chunks);
     }
 
-    public synchronized void clearQueue(Player player){
-        chunksToSend.remove(player);
+    public void clearQueue(Player player){
+        chunkPipeline.clear(player);
     }
 
     public void shutdown() {
-
+        chunkPipeline.shutdown();
     }
     
     /**
@@ -230,43 +269,54 @@ public class Level {
         return provider;
     }
 
+    /**
+     * Spawns a player to the players within tracking range, and them to it.
+     * @param p The Player.
+     */
     public void spawnToAll(Player p){
-        for(Player player : server.getOnlinePlayers()){
-            if(player != p && player.getLocation().getLevel() == this) {
-                p.spawnTo(player);
-                player.spawnTo(p);
-            }
+        if(p instanceof Entity){
+            entityTracker.add((Entity) p);
         }
     }
 
     public void despawnFromAll(Player p){
-        for(Player player : server.getOnlinePlayers()){
-            if(player != this){
-                if(player instanceof PocketPlayer) {
-                    p.despawnFrom(player);
-                    player.despawnFrom(p);
-                }
-            }
+        if(p instanceof Entity){
+            movement.remove((Entity) p);
+            entityTracker.remove((Entity) p);
         }
     }
 
+    /**
+     * Returns the tracker deciding which players see which entities of this level.
+     * @return EntityTracker
+     */
+    public EntityTracker getEntityTracker() {
+        return entityTracker;
+    }
+
+    /**
+     * Records the movement of a player. It is sent to the players tracking it at the end of the level tick, coalesced
+     * with other movement of this tick.
+     * @param player The Player, its location already updated.
+     * @param cMpp The MovePlayerPacket the client sent.
+     */
     public void broadcastMovement(Player player, MovePlayerPacket cMpp) {
         Location l = player.getLocation();
         if(l.getLevel() != this){
             throw new IllegalArgumentException("Player is on a different Level!");
         }
-        MovePlayerPacket mpp = new MovePlayerPacket(); //We assume that the movement checking was done in the Player implementation
-        mpp.eid = player.getId();
-        mpp.x = (float) l.getX();
-        mpp.y = (float) l.getY();
-        mpp.z = (float) l.getZ();
-        mpp.yaw = l.getYaw();
-        mpp.bodyYaw = cMpp.bodyYaw;
-        mpp.pitch = l.getPitch();
-        mpp.mode = cMpp.mode;
-        mpp.onGround = cMpp.onGround;
-
-        server.getOnlinePlayers().stream().filter(p -> p.getLocation().getLevel() == this && p != player).forEach(p -> p.sendDataPacket(mpp));
+        if(player instanceof Entity){ //We assume that the movement checking was done in the Player implementation
+            entityTracker.move((Entity) player);
+            movement.update((Entity) player, cMpp.bodyYaw, cMpp.mode, cMpp.onGround);
+        }
+    }
+
+    /**
+     * Returns the coalescer of the movement broadcast on this level.
+     * @return MovementCoalescer
+     */
+    public MovementCoalescer getMovementCoalescer() {
+        return movement;
     }
 
     public void setSpawnLocation(Location location){
@@ -281,6 +331,14 @@ public class Level {
         return name;
     }
 
+    /**
+     * Returns the entities on this level
+     * @return Collection<Entity>
+     */
+    public Collection<Entity> getEntities() {
+        return server.getEntityManager().getEntities(this);
+    }
+
     public int getGamemode() {
         return gamemode;
     }
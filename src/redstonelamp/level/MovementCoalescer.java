@@ -0,0 +1,182 @@
+package redstonelamp.level;
+
+import redstonelamp.Player;
+import redstonelamp.Server;
+import redstonelamp.entity.Entity;
+import redstonelamp.level.location.Location;
+import redstonelamp.network.packet.MovePlayerPacket;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects the movement of entities during a tick and sends only the latest state of each entity once per tick.
+ * <br>
+ * Moves smaller than the thresholds, compared to the state the viewers last received, are held back until they add up,
+ * or until the keyframe interval passed. Resets are always sent. Every method must be called on the main thread.
+ */
+public class MovementCoalescer {
+    private final Server server;
+    private final double minDistanceSquared;
+    private final float minRotation;
+    private final int keyframeTicks;
+
+    private final Map<Entity, State> states = new HashMap<>();
+    private final Set<Entity> dirty = new LinkedHashSet<>();
+    private int tick = 0;
+
+    private long sent = 0;
+    private long suppressed = 0;
+
+    /**
+     * Create a new MovementCoalescer.
+     * @param server The Server.
+     * @param minDistance The distance in blocks an entity has to move before it is sent.
+     * @param minRotation The rotation in degrees an entity has to turn before it is sent.
+     * @param keyframeTicks The amount of ticks after which held back movement is sent anyway.
+     */
+    public MovementCoalescer(Server server, double minDistance, float minRotation, int keyframeTicks){
+        this.server = server;
+        this.minDistanceSquared = minDistance * minDistance;
+        this.minRotation = minRotation;
+        this.keyframeTicks = Math.max(1, keyframeTicks);
+    }
+
+    /**
+     * Records the current location of an entity, replacing movement recorded earlier in this tick.
+     * @param entity The Entity.
+     * @param bodyYaw The body yaw.
+     * @param mode The movement mode, see <code>MovePlayerPacket.MODE_*</code>.
+     * @param onGround If the entity is on the ground.
+     */
+    public void update(Entity entity, float bodyYaw, byte mode, boolean onGround){
+        State state = states.get(entity);
+        if(state == null){
+            state = new State();
+            states.put(entity, state);
+        }
+        state.bodyYaw = bodyYaw;
+        state.onGround = onGround;
+        //A reset in this tick must not be overwritten by a later normal move
+        if(mode != MovePlayerPacket.MODE_NORMAL){
+            state.mode = mode;
+        }
+        dirty.add(entity);
+    }
+
+    /**
+     * Forgets an entity, for example when it was despawned.
+     * @param entity The Entity.
+     */
+    public void remove(Entity entity){
+        states.remove(entity);
+        dirty.remove(entity);
+    }
+
+    /**
+     * Sends the movement recorded since the last flush to the viewers of each entity.
+     */
+    public void flush(){
+        tick++;
+        if(dirty.isEmpty()){
+            return;
+        }
+        List<Player> recipients = new ArrayList<>();
+        Iterator<Entity> iterator = dirty.iterator();
+        while(iterator.hasNext()){
+            Entity entity = iterator.next();
+            State state = states.get(entity);
+            Location l = entity.getLocation();
+            if(state == null || l == null){
+                iterator.remove();
+                continue;
+            }
+            if(!state.shouldSend(l)){
+                suppressed++;
+                continue; //Stays dirty, so it is sent once it adds up or at the next keyframe
+            }
+            iterator.remove();
+
+            recipients.clear();
+            for(Player player : entity.getViewers()){
+                if(player != entity){
+                    recipients.add(player);
+                }
+            }
+            if(!recipients.isEmpty()){
+                MovePlayerPacket mpp = MovePlayerPacket.POOL.acquire();
+                mpp.eid = entity.getId();
+                mpp.x = (float) l.getX();
+                mpp.y = (float) l.getY();
+                mpp.z = (float) l.getZ();
+                mpp.yaw = l.getYaw();
+                mpp.bodyYaw = state.bodyYaw;
+                mpp.pitch = l.getPitch();
+                mpp.mode = state.mode;
+                mpp.onGround = state.onGround;
+                server.getNetwork().broadcastPacket(mpp, recipients);
+                mpp.release();
+                sent++;
+            }
+            state.sent(l);
+        }
+    }
+
+    public long getSentCount(){
+        return sent;
+    }
+
+    /**
+     * Returns the amount of times movement was held back because it was below the thresholds.
+     * @return long
+     */
+    public long getSuppressedCount(){
+        return suppressed;
+    }
+
+    private class State {
+        private float bodyYaw;
+        private byte mode = MovePlayerPacket.MODE_NORMAL;
+        private boolean onGround;
+
+        private boolean hasSent = false;
+        private double x, y, z;
+        private float yaw, pitch;
+        private boolean sentOnGround;
+        private int sentTick;
+
+        private boolean shouldSend(Location l){
+            if(!hasSent || mode != MovePlayerPacket.MODE_NORMAL || onGround != sentOnGround || tick - sentTick >= keyframeTicks){
+                return true;
+            }
+            double dx = l.getX() - x;
+            double dy = l.getY() - y;
+            double dz = l.getZ() - z;
+            return dx * dx + dy * dy + dz * dz >= minDistanceSquared
+                    || angle(l.getYaw(), yaw) >= minRotation
+                    || angle(l.getPitch(), pitch) >= minRotation;
+        }
+
+        private void sent(Location l){
+            hasSent = true;
+            x = l.getX();
+            y = l.getY();
+            z = l.getZ();
+            yaw = l.getYaw();
+            pitch = l.getPitch();
+            sentOnGround = onGround;
+            sentTick = tick;
+            mode = MovePlayerPacket.MODE_NORMAL;
+        }
+    }
+
+    private static float angle(float a, float b){
+        float d = Math.abs(a - b) % 360;
+        return d > 180 ? 360 - d : d;
+    }
+}
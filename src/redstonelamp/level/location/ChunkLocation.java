@@ -38,6 +38,11 @@ public class ChunkLocation {
         }
     }
 
+    @Override
+    public int hashCode() {
+        return 31 * x + z;
+    }
+
     @Override
     public String toString() {
         return "ChunkLocation: "+x+", "+z;
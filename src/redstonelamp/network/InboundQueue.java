@@ -0,0 +1,196 @@
+package redstonelamp.network;
+
+import redstonelamp.network.packet.BatchPacket;
+import redstonelamp.network.packet.DataPacket;
+import redstonelamp.network.packet.UnknownDataPacket;
+import redstonelamp.utils.CompressionUtils;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+
+/**
+ * Inbound packets of one MCPE session. Raw packets are decoded, and <code>BatchPacket</code>s inflated and split, on a
+ * worker thread; the main thread then polls the decoded packets in the order they were received.
+ * <br>
+ * At most one worker decodes a session at a time, so different sessions decode in parallel while each stays in order.
+ */
+public class InboundQueue {
+    private final Network network;
+    private final Executor executor;
+    private final int maxQueued;
+
+    private final Queue<byte[]> raw = new ConcurrentLinkedQueue<>();
+    private final Queue<DataPacket> decoded = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private volatile Exception failure;
+    private volatile boolean closed = false;
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Create a new InboundQueue.
+     * @param network The Network used to look up packets.
+     * @param executor The executor decoding runs on.
+     * @param maxQueued The amount of packets that may wait for decoding or handling, newer packets are dropped.
+     */
+    public InboundQueue(Network network, Executor executor, int maxQueued){
+        this.network = network;
+        this.executor = executor;
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * Queues a raw packet for decoding. Called on the thread that reads from JRakLib.
+     * @param buffer The raw packet.
+     * @return False if the packet was dropped because the queue is full.
+     */
+    public boolean receive(byte[] buffer){
+        if(closed){
+            return false;
+        }
+        if(queued.get() >= maxQueued){
+            dropped.incrementAndGet();
+            return false;
+        }
+        received.incrementAndGet();
+        queued.incrementAndGet();
+        raw.add(buffer);
+        schedule();
+        return true;
+    }
+
+    private void schedule(){
+        if(scheduled.compareAndSet(false, true)){
+            executor.execute(this::decodeAll);
+        }
+    }
+
+    private void decodeAll(){
+        try {
+            byte[] buffer;
+            while(!closed && failure == null && (buffer = raw.poll()) != null){
+                try {
+                    decode(buffer);
+                } catch(Exception e) {
+                    failure = e;
+                } finally {
+                    queued.decrementAndGet();
+                }
+            }
+        } finally {
+            scheduled.set(false);
+        }
+        //A packet may have arrived after the last poll, but before the flag was cleared
+        if(!raw.isEmpty() && !closed && failure == null){
+            schedule();
+        }
+    }
+
+    private void decode(byte[] buffer) throws DataFormatException {
+        DataPacket pk = create(buffer[0]);
+        pk.decode(buffer);
+        if(pk.getPID() == BatchPacket.ID){
+            byte[] payload = CompressionUtils.zlibInflate(((BatchPacket) pk).payload);
+            int offset = 0;
+            while(offset < payload.length){
+                DataPacket sub = create(payload[offset++]);
+                sub.decode(payload, offset);
+                offset = sub.getOffset();
+                add(sub);
+            }
+            return;
+        }
+        add(pk);
+    }
+
+    private void add(DataPacket pk){
+        queued.incrementAndGet();
+        decoded.add(pk);
+        //Closed while this packet was decoded, close() may already have drained the queue
+        if(closed){
+            releaseDecoded();
+        }
+    }
+
+    private DataPacket create(byte pid){
+        DataPacket pk = network.getPacket(pid);
+        return pk != null ? pk : new UnknownDataPacket();
+    }
+
+    /**
+     * Returns the next decoded packet, in the order they were received. Main thread only.
+     * @return The DataPacket, or null.
+     */
+    public DataPacket poll(){
+        DataPacket pk = decoded.poll();
+        if(pk != null){
+            queued.decrementAndGet();
+        }
+        return pk;
+    }
+
+    public boolean hasDecoded(){
+        return !decoded.isEmpty();
+    }
+
+    /**
+     * Returns the exception that stopped decoding, if any. Nothing is decoded after a failure until <code>resume()</code>.
+     * @return Exception, or null.
+     */
+    public Exception getFailure(){
+        return failure;
+    }
+
+    /**
+     * Clears the failure, dropping the packet that failed, and continues decoding the packets received after it.
+     * Main thread only.
+     */
+    public void resume(){
+        failure = null;
+        if(!raw.isEmpty() && !closed){
+            schedule();
+        }
+    }
+
+    /**
+     * Stops decoding and drops every queued packet, releasing pooled packets.
+     */
+    public void close(){
+        closed = true;
+        while(raw.poll() != null){
+            queued.decrementAndGet();
+        }
+        releaseDecoded();
+    }
+
+    private void releaseDecoded(){
+        DataPacket pk;
+        while((pk = decoded.poll()) != null){
+            queued.decrementAndGet();
+            pk.release();
+        }
+    }
+
+    /**
+     * Returns the amount of packets waiting for decoding or handling.
+     * @return int
+     */
+    public int size(){
+        return queued.get();
+    }
+
+    public long getReceivedCount(){
+        return received.get();
+    }
+
+    public long getDroppedCount(){
+        return dropped.get();
+    }
+}
@@ -7,12 +7,17 @@ import net.beaconpe.jraklib.server.ServerHandler;
 import net.beaconpe.jraklib.server.ServerInstance;
 import redstonelamp.Player;
 import redstonelamp.PocketPlayer;
+import redstonelamp.RedstoneLamp;
 import redstonelamp.Server;
 import redstonelamp.network.packet.BatchPacket;
 import redstonelamp.network.packet.DataPacket;
-import redstonelamp.network.packet.UnknownDataPacket;
+import redstonelamp.timings.Timing;
 import redstonelamp.utils.Binary;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Interface for communicating with the JRakLib library.
  */
@@ -25,6 +30,22 @@ public class JRakLibInterface implements ServerInstance, NetworkInterface{
 
     private boolean rakLibCrashed = false;
 
+    private final Map<String, PacketBatcher> batchers = new ConcurrentHashMap<>();
+    private final boolean batchPackets;
+    private final int maxBatchSize;
+
+    private final Map<String, InboundQueue> inbound = new ConcurrentHashMap<>();
+    private final int inboundQueueLimit;
+    private final int inboundPacketsPerTick;
+    private final long inboundBudgetNanos;
+    private int roundRobin = 0;
+
+    private final Map<String, RateLimiter> rateLimiters = new ConcurrentHashMap<>();
+    private final RateLimiter.Settings rateLimitSettings = RateLimiter.Settings.load("rate-limit-mcpe");
+
+    private final Timing[] packetTimings = new Timing[256];
+    private final Timing sendTiming;
+
     public JRakLibInterface(Server server){
         this.server = server;
         server.getLogger().info("Starting Minecraft: PE server v" + PENetworkInfo.MCPE_VERSION + " (protocol " + PENetworkInfo.MCPE_PROTOCOL + ")");
@@ -38,48 +59,169 @@ public class JRakLibInterface implements ServerInstance, NetworkInterface{
         server.getLogger().debug("[JRakLibInterface]: Successfully bound to "+server.getBindInterface()+":"+server.getBindPort());
         
         interface_.sendOption("portChecking", "false");
+
+        sendTiming = server.getTimings().getNetworkInterfaceTiming(this).getChild("Send Packet");
+        batchPackets = RedstoneLamp.yaml == null || RedstoneLamp.yaml.getBoolean("network", "batch-packets", true);
+        maxBatchSize = RedstoneLamp.yaml == null ? 16384 : RedstoneLamp.yaml.getInt("network", "max-batch-size", 16384);
+        inboundQueueLimit = RedstoneLamp.yaml == null ? 1024 : RedstoneLamp.yaml.getInt("network", "inbound-queue-limit", 1024);
+        inboundPacketsPerTick = RedstoneLamp.yaml == null ? 2000 : RedstoneLamp.yaml.getInt("network", "inbound-packets-per-tick", 2000);
+        inboundBudgetNanos = (RedstoneLamp.yaml == null ? 20 : RedstoneLamp.yaml.getInt("network", "inbound-budget-ms", 20)) * 1000000L;
     }
 
     @Override
     public void openSession(String identifier, String address, int port, long clientID) {
         server.getLogger().debug("New session from "+identifier+" with clientID: "+clientID);
         Player player = new PocketPlayer(server, this, identifier, address, port, clientID);
+        if(batchPackets){
+            batchers.put(identifier, new PacketBatcher(this, player, maxBatchSize));
+        }
+        inbound.put(identifier, new InboundQueue(server.getNetwork(), RedstoneLamp.getAsync(), inboundQueueLimit));
+        rateLimiters.put(identifier, new RateLimiter(rateLimitSettings));
         server.addPlayer(player);
     }
 
     @Override
     public void closeSession(String identifier, String reason) {
         server.getLogger().debug("Session "+identifier+" closed: "+reason);
-        if(server.getPlayer(identifier) != null){
-            server.getPlayer(identifier).close(" left the game", reason, true);
+        Player player = server.getPlayer(identifier);
+        if(player != null){
+            player.close(" left the game", reason, true);
         }
+        batchers.remove(identifier);
+        closeInbound(identifier);
     }
 
     @Override
     public void handleEncapsulated(String identifier, EncapsulatedPacket packet, int flags) {
-        if(server.getPlayer(identifier) != null){
-            try{
-                if(packet.buffer != null || packet.buffer.length > 0){
-                    server.getLogger().debug("("+identifier+") Packet IN: "+Binary.dumpHexBytes(packet.buffer));
-                    DataPacket pk = server.getNetwork().getPacket(packet.buffer[0]);
-                    if(pk != null){
-                        pk.decode(packet.buffer);
-                    } else {
-                        pk = new UnknownDataPacket();
-                        pk.decode(packet.buffer);
+        InboundQueue queue = inbound.get(identifier);
+        if(queue != null && packet.buffer != null && packet.buffer.length > 0){
+            if(server.isDebugMode()){
+                server.getLogger().debug("("+identifier+") Packet IN: "+Binary.dumpHexBytes(packet.buffer));
+            }
+            RateLimiter limiter = rateLimiters.get(identifier);
+            switch(limiter == null ? RateLimiter.Action.ALLOW : limiter.acquire(packet.buffer[0] & 0xFF)){
+                case ALLOW:
+                    queue.receive(packet.buffer); //Decoded on a worker, handled by handleInbound()
+                    break;
+                case THROTTLE:
+                    limiter.defer(packet.buffer);
+                    break;
+                case DROP:
+                    break;
+                case KICK:
+                    kickFlooder(identifier);
+                    break;
+            }
+        }
+    }
+
+    private void kickFlooder(String identifier) {
+        closeInbound(identifier);
+        Player player = server.getPlayer(identifier);
+        if(player != null){
+            server.getLogger().warning(player.getName()+" ["+identifier+"] was disconnected for sending too many packets");
+            player.close(" left the game", "Sending too many packets", true);
+        }
+    }
+
+    /**
+     * Feeds throttled packets to the inbound queues, as far as the rate limits allow.
+     */
+    private void releaseThrottled() {
+        for(Map.Entry<String, RateLimiter> entry : rateLimiters.entrySet()){
+            if(entry.getValue().hasDeferred()){
+                InboundQueue queue = inbound.get(entry.getKey());
+                if(queue != null){
+                    entry.getValue().releaseDeferred(queue::receive);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the handlers of decoded packets, round robin across the players, one packet per player per pass, until the
+     * tick's packet or time budget is used up. What is left is handled next tick.
+     */
+    private void handleInbound() {
+        List<Player> players = server.getOnlinePlayers();
+        int size = players.size();
+        if(size == 0){
+            return;
+        }
+        int start = Math.floorMod(roundRobin++, size);
+        long deadline = System.nanoTime() + inboundBudgetNanos;
+        int handled = 0;
+        boolean progress = true;
+        while(progress){
+            progress = false;
+            for(int i = 0; i < size; i++){
+                Player player = players.get((start + i) % size);
+                InboundQueue queue = inbound.get(player.getIdentifier());
+                if(queue == null){
+                    continue;
+                }
+                DataPacket pk = queue.poll();
+                if(pk == null){
+                    //Packets decoded before a failure are handled first, to keep the order
+                    if(queue.getFailure() != null){
+                        handleFailure(player, queue);
                     }
-                    server.getPlayer(identifier).handleDataPacket(pk);
+                    continue;
                 }
-            } catch(Exception e){
-                if(server.isDebugMode()){
-                    server.getLogger().debug("Exception while processing packet 0x"+String.format("%02X ", packet.buffer[0])+"");
-                    server.getLogger().error("Exception: "+e.getMessage());
-                    e.printStackTrace();
+                handlePacket(player, pk);
+                progress = true;
+                if(++handled >= inboundPacketsPerTick || System.nanoTime() >= deadline){
+                    return;
                 }
+            }
+        }
+    }
 
-                interface_.blockAddress(server.getPlayer(identifier).getAddress().getHostString(), 5000);
+    private void handlePacket(Player player, DataPacket pk) {
+        Timing timing = getPacketTiming(pk.getPID());
+        timing.startTiming();
+        try {
+            player.handleDataPacket(pk);
+        } catch(Exception e){
+            if(server.isDebugMode()){
+                server.getLogger().debug("Exception while processing packet 0x"+String.format("%02X ", pk.getPID())+"");
+                server.getLogger().error("Exception: "+e.getMessage());
+                e.printStackTrace();
             }
+
+            interface_.blockAddress(player.getAddress().getHostString(), 5000);
+        } finally {
+            pk.release();
+            timing.stopTiming();
+        }
+    }
+
+    private void handleFailure(Player player, InboundQueue queue) {
+        if(server.isDebugMode()){
+            server.getLogger().debug("Exception while decoding packets of "+player.getIdentifier());
+            server.getLogger().error("Exception: "+queue.getFailure().getMessage());
+            queue.getFailure().printStackTrace();
         }
+        //Only the bad packet is dropped, the session keeps its queue
+        queue.resume();
+        interface_.blockAddress(player.getAddress().getHostString(), 5000);
+    }
+
+    private void closeInbound(String identifier) {
+        rateLimiters.remove(identifier);
+        InboundQueue queue = inbound.remove(identifier);
+        if(queue != null){
+            queue.close();
+        }
+    }
+
+    /**
+     * Returns the inbound queue of a player, or null.
+     * @param player The Player.
+     * @return InboundQueue
+     */
+    public InboundQueue getInboundQueue(Player player) {
+        return inbound.get(player.getIdentifier());
     }
 
     @Override
@@ -97,38 +239,102 @@ public class JRakLibInterface implements ServerInstance, NetworkInterface{
 
     }
 
+    private Timing getPacketTiming(byte pid) {
+        Timing timing = packetTimings[pid & 0xFF];
+        if(timing == null){
+            timing = server.getTimings().getNetworkInterfaceTiming(this).getChild("Handle Packet 0x"+String.format("%02X", pid));
+            packetTimings[pid & 0xFF] = timing;
+        }
+        return timing;
+    }
+
     public boolean isRakLibCrashed() {
         return rakLibCrashed;
     }
 
     @Override
     public void sendPacket(Player player, DataPacket packet, boolean needACK, boolean immediate) {
-        if(server.getPlayer(player.getIdentifier()) != null){
-            byte[] buffer = packet.encode();
-            if(buffer[0] != PENetworkInfo.FULL_CHUNK_DATA_PACKET) server.getLogger().debug("("+player.getIdentifier()+") Packet OUT: "+ Binary.dumpHexBytes(buffer));
-            if(!immediate && !needACK && !(packet instanceof BatchPacket) && PENetworkInfo.COMPRESSION_LIMIT >= 0 && buffer.length >= PENetworkInfo.COMPRESSION_LIMIT){
-                server.getNetwork().sendBatches(new Player[] {player}, new DataPacket[] {packet}, packet.getChannel());
-                return;
+        if(server.getPlayer(player.getIdentifier()) == player){
+            sendTiming.startTiming();
+            try {
+                PacketBatcher batcher = batchers.get(player.getIdentifier());
+                if(batcher == null || needACK || immediate || packet.getPID() == BatchPacket.ID){
+                    if(batcher != null){
+                        batcher.flush(); //Keep the order the packets were sent in
+                    }
+                    sendPacket0(player, packet, needACK, immediate);
+                } else {
+                    batcher.add(packet);
+                }
+            } finally {
+                sendTiming.stopTiming();
             }
+        }
+    }
 
-            EncapsulatedPacket pk = new EncapsulatedPacket();
-            pk.buffer = buffer;
-            pk.messageIndex = 0;
-            if(packet.getChannel() != NetworkChannel.CHANNEL_NONE){
-                pk.reliability = 3;
-                pk.orderChannel = packet.getChannel().getAsByte();
-                pk.orderIndex = 0;
-            } else {
-                pk.reliability = 2;
-            }
+    private void sendPacket0(Player player, DataPacket packet, boolean needACK, boolean immediate) {
+        byte[] buffer = packet.encode();
+        if(!immediate && !needACK && packet.getPID() != BatchPacket.ID && PENetworkInfo.COMPRESSION_LIMIT >= 0 && buffer.length >= PENetworkInfo.COMPRESSION_LIMIT){
+            server.getNetwork().sendBatch(new Player[] {player}, buffer, packet.getChannel());
+            return;
+        }
+        sendBuffer(player, buffer, packet.getChannel(), needACK, immediate);
+    }
 
-            interface_.sendEncapsulated(player.getIdentifier(), pk, (byte) ((needACK == true ? JRakLib.FLAG_NEED_ACK : 0) | (immediate == true ? JRakLib.PRIORITY_IMMEDIATE : JRakLib.PRIORITY_NORMAL)));
+    /**
+     * INTERNAL METHOD! Sends already encoded packet bytes as one encapsulated packet.
+     * @param player The Player.
+     * @param buffer The encoded packet.
+     * @param channel The channel to order the packet on.
+     * @param needACK If JRakLib should notify when the packet is acknowledged.
+     * @param immediate If the packet should skip the JRakLib send queue.
+     */
+    void sendBuffer(Player player, byte[] buffer, NetworkChannel channel, boolean needACK, boolean immediate) {
+        if(buffer[0] != PENetworkInfo.FULL_CHUNK_DATA_PACKET) server.getLogger().debug("("+player.getIdentifier()+") Packet OUT: "+ Binary.dumpHexBytes(buffer));
+
+        EncapsulatedPacket pk = new EncapsulatedPacket();
+        pk.buffer = buffer;
+        pk.messageIndex = 0;
+        if(channel != NetworkChannel.CHANNEL_NONE){
+            pk.reliability = 3;
+            pk.orderChannel = channel.getAsByte();
+            pk.orderIndex = 0;
+        } else {
+            pk.reliability = 2;
         }
+
+        interface_.sendEncapsulated(player.getIdentifier(), pk, (byte) ((needACK == true ? JRakLib.FLAG_NEED_ACK : 0) | (immediate == true ? JRakLib.PRIORITY_IMMEDIATE : JRakLib.PRIORITY_NORMAL)));
     }
 
     @Override
-    public void close(Player player, String reason) {
+    public void flush() {
+        for(Player player : server.getOnlinePlayers()){
+            if(player instanceof PocketPlayer){
+                ((PocketPlayer) player).getOutboundQueue().drain(player::sendDirectDataPacket);
+            }
+        }
+        for(PacketBatcher batcher : batchers.values()){
+            batcher.flush();
+        }
+    }
 
+    /**
+     * Returns the outbound batcher of a player, or null if batching is disabled.
+     * @param player The Player.
+     * @return PacketBatcher
+     */
+    public PacketBatcher getBatcher(Player player) {
+        return batchers.get(player.getIdentifier());
+    }
+
+    public Server getServer() {
+        return server;
+    }
+
+    @Override
+    public void close(Player player, String reason) {
+        batchers.remove(player.getIdentifier());
+        closeInbound(player.getIdentifier());
     }
 
     @Override
@@ -148,6 +354,9 @@ public class JRakLibInterface implements ServerInstance, NetworkInterface{
             rakLibCrashed = true;
             server.getNetwork().removeInterface(this);
         }
+
+        releaseThrottled();
+        handleInbound();
     }
 
     @Override
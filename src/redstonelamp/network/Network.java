@@ -1,54 +1,54 @@
 package redstonelamp.network;
 
 import redstonelamp.Player;
-import redstonelamp.RedstoneLamp;
+import redstonelamp.PocketPlayer;
 import redstonelamp.Server;
+import redstonelamp.event.network.DataPacketSendEvent;
 import redstonelamp.network.packet.*;
+import redstonelamp.timings.Timing;
+import redstonelamp.utils.BufferPool;
 import redstonelamp.utils.CompressionUtils;
 import redstonelamp.utils.DynamicByteBuffer;
 
+import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Networking class.
  */
 public class Network {
-    private Map<Byte, Class<? extends DataPacket>> packets = new ConcurrentHashMap<>();
+    private final PacketRegistry<DataPacket> packets = new PacketRegistry<>();
     private Server server;
     private List<NetworkInterface> interfaces = new ArrayList<>();
 
-    private Map<Player[], List<DataPacket>> toSend = new ConcurrentHashMap<>();
-
     public Network(Server server){
         this.server = server;
         registerPackets();
     }
 
     public void tick(){
-        interfaces.forEach(redstonelamp.network.NetworkInterface::processData);
-
-        for(Player[] players : toSend.keySet()){
-            List<DataPacket> packets = toSend.get(players);
-            for(Player player : players){
-                packets.forEach(player::sendDirectDataPacket);
-            }
-            toSend.remove(players);
+        for(NetworkInterface networkInterface : interfaces){
+            Timing timing = server.getTimings().getNetworkInterfaceTiming(networkInterface);
+            timing.startTiming();
+            networkInterface.processData();
+            timing.stopTiming();
         }
     }
 
+    /**
+     * Queues a packet for each player, sent on the next network flush. Can be called from any thread.
+     * @param i The players.
+     * @param dp The packet, sent as is to every player.
+     */
     public void addToSendQueue(Player[] i, DataPacket dp){
-        if(toSend.containsKey(i)) {
-            List<DataPacket> list = toSend.get(i);
-            list.add(dp);
-            toSend.put(i, list);
-        } else {
-            List<DataPacket> l = new CopyOnWriteArrayList<>();
-            l.add(dp);
-            toSend.put(i, l);
+        for(Player player : i){
+            if(player instanceof PocketPlayer){
+                ((PocketPlayer) player).getOutboundQueue().add(dp);
+            } else {
+                server.getScheduler().runTask(server, () -> player.sendDirectDataPacket(dp));
+            }
         }
     }
 
@@ -64,7 +64,8 @@ public class Network {
                 }
                 pk.decode(bp.payload, offset);
                 player.handleDataPacket(pk);
-                offset =+ (pk.getOffset() - offset);
+                offset = pk.getOffset();
+                pk.release();
                 if(offset >= bp.payload.length || offset < 0){
                     return;
                 }
@@ -79,18 +80,38 @@ public class Network {
     }
 
     public void sendBatches(Player[] players, DataPacket[] packets, NetworkChannel channel){
-        DynamicByteBuffer bb = DynamicByteBuffer.newInstance();
-        for(DataPacket packet : packets){
-            bb.put(packet.encode());
+        BufferPool pool = BufferPool.getEncodePool();
+        DynamicByteBuffer bb = pool.acquire(ByteOrder.BIG_ENDIAN);
+        byte[] payload;
+        try {
+            for(DataPacket packet : packets){
+                packet.encode(bb);
+            }
+            payload = bb.copyArray(); //The compression task owns this copy, the pooled buffer stays on this thread
+        } finally {
+            pool.release(bb);
         }
+        sendBatch(players, payload, channel);
+    }
 
-        RedstoneLamp.getAsync().submit(() -> {
-                    BatchPacket bp = new BatchPacket();
-                    bp.setChannel(channel);
-                    bp.payload = CompressionUtils.zlibDeflate(bb.toArray(), PENetworkInfo.COMPRESSION_LEVEL);
-                    addToSendQueue(players, bp);
+    /**
+     * Compresses already encoded packets off the main thread, and sends them as one BatchPacket on a later network flush.
+     * @param players The players to send the batch to.
+     * @param payload The encoded packets, not modified afterwards by the caller.
+     * @param channel The channel of the batch.
+     */
+    public void sendBatch(Player[] players, byte[] payload, NetworkChannel channel){
+        //Every recipient sends the same bytes, queued straight from the worker
+        server.getScheduler().runTaskAsync(server, () -> addToSendQueue(players, BatchPacket.compress(payload, 0, payload.length, channel)));
+    }
+
+    /**
+     * Flushes the packets every interface queued during this tick.
+     */
+    public void flush(){
+        for(NetworkInterface networkInterface : interfaces){
+            networkInterface.flush();
         }
-        );
     }
 
     /**
@@ -99,13 +120,72 @@ public class Network {
      * @param playerClazz The type of player (PocketPlayer, DesktopPlayer etc)
      */
     public void broadcastPacket(DataPacket packet, Class<? extends Player> playerClazz){
+        List<Player> players = new ArrayList<>();
         for(Player p : server.getOnlinePlayers()){
             if(p.getClass().getName().equals(playerClazz.getName())){
+                players.add(p);
+            }
+        }
+        broadcastPacket(packet, players);
+    }
+
+    /**
+     * Broadcasts a DataPacket to <code>players</code>. The packet is encoded once and the bytes are shared by every
+     * MCPE recipient; large packets are also compressed once for all of them. The packet may be released afterwards.
+     * <br>
+     * While DataPacketSendEvent has listeners, every player is sent the original packet, so listeners can inspect it.
+     * @param packet The Packet to be sent.
+     * @param players The recipients.
+     */
+    public void broadcastPacket(DataPacket packet, Collection<? extends Player> players){
+        boolean shared = !server.getEventManager().hasListeners(DataPacketSendEvent.class);
+        EncodedPacket encoded = null;
+        List<Player> batched = null;
+        for(Player p : players){
+            if(!shared || !(p instanceof PocketPlayer)){
                 p.sendDataPacket(packet);
+                continue;
             }
+            if(encoded == null){
+                encoded = EncodedPacket.of(packet);
+                if(isGroupBatched(encoded)){
+                    batched = new ArrayList<>();
+                }
+            }
+            if(batched != null){
+                batched.add(p);
+            } else {
+                p.sendDataPacket(encoded);
+            }
+        }
+        if(batched != null && !batched.isEmpty()){
+            sendBatch(batched.toArray(new Player[batched.size()]), encoded.encode(), encoded.getChannel());
+        }
+    }
+
+    /**
+     * Sends <code>packets</code> to the MCPE players of <code>players</code> as one BatchPacket, encoded and
+     * compressed once for the whole audience.
+     * @param packets The packets.
+     * @param players The recipients.
+     * @param channel The channel of the batch.
+     */
+    public void broadcastBatch(DataPacket[] packets, Collection<? extends Player> players, NetworkChannel channel){
+        List<Player> pocketPlayers = new ArrayList<>(players.size());
+        for(Player p : players){
+            if(p instanceof PocketPlayer){
+                pocketPlayers.add(p);
+            }
+        }
+        if(!pocketPlayers.isEmpty()){
+            sendBatches(pocketPlayers.toArray(new Player[pocketPlayers.size()]), packets, channel);
         }
     }
 
+    private boolean isGroupBatched(EncodedPacket packet){
+        return packet.getPID() != BatchPacket.ID && PENetworkInfo.COMPRESSION_LIMIT >= 0 && packet.getLength() >= PENetworkInfo.COMPRESSION_LIMIT;
+    }
+
     public void setName(String name){
         for(NetworkInterface networkInterface : interfaces){
             networkInterface.setName(name);
@@ -130,36 +210,35 @@ public class Network {
     }
 
     public DataPacket getPacket(byte ID){
-        if(packets.containsKey(ID)) {
-            Class<? extends DataPacket> clazz = packets.get(ID);
-            try {
-                return clazz.newInstance();
-            } catch (InstantiationException e) {
-                e.printStackTrace();
-            } catch (IllegalAccessException e) {
-                e.printStackTrace();
-            }
-        }
-        return null;
+        return packets.create(ID);
+    }
+
+    /**
+     * Returns the registry of inbound MCPE packets, plugins can register custom packets here.
+     * @return PacketRegistry<DataPacket>
+     */
+    public PacketRegistry<DataPacket> getPacketRegistry(){
+        return packets;
     }
 
     private void registerPackets(){
-        packets.put(AnimatePacket.ID, AnimatePacket.class);
-        packets.put(BatchPacket.ID, BatchPacket.class);
-        packets.put(ContainerSetContentPacket.ID, ContainerSetContentPacket.class);
-        packets.put(DisconnectPacket.ID, DisconnectPacket.class);
-        packets.put(LoginPacket.ID, LoginPacket.class);
-        packets.put(PlayStatusPacket.ID, PlayStatusPacket.class);
-        packets.put(SetDifficultyPacket.ID, SetDifficultyPacket.class);
-        packets.put(SetEntityDataPacket.ID, SetEntityDataPacket.class);
-        packets.put(SetEntityMotionPacket.ID, SetEntityMotionPacket.class);
-        packets.put(SetHealthPacket.ID, SetHealthPacket.class);
-        packets.put(SetSpawnPositionPacket.ID, SetSpawnPositionPacket.class);
-        packets.put(SetTimePacket.ID, SetTimePacket.class);
-        packets.put(StartGamePacket.ID, StartGamePacket.class);
-        packets.put(TextPacket.ID, TextPacket.class);
-        packets.put(MovePlayerPacket.ID, MovePlayerPacket.class);
-        packets.put(RemoveBlockPacket.ID, RemoveBlockPacket.class);
+        packets.register(AnimatePacket.ID, AnimatePacket.POOL::acquire);
+        packets.register(BatchPacket.ID, BatchPacket::new);
+        packets.register(ContainerSetContentPacket.ID, ContainerSetContentPacket::new);
+        packets.register(DisconnectPacket.ID, DisconnectPacket::new);
+        packets.register(LoginPacket.ID, LoginPacket::new);
+        packets.register(PlayStatusPacket.ID, PlayStatusPacket::new);
+        packets.register(SetDifficultyPacket.ID, SetDifficultyPacket::new);
+        packets.register(SetEntityDataPacket.ID, SetEntityDataPacket::new);
+        packets.register(SetEntityMotionPacket.ID, SetEntityMotionPacket::new);
+        packets.register(SetHealthPacket.ID, SetHealthPacket::new);
+        packets.register(SetSpawnPositionPacket.ID, SetSpawnPositionPacket::new);
+        packets.register(SetTimePacket.ID, SetTimePacket::new);
+        packets.register(StartGamePacket.ID, StartGamePacket::new);
+        packets.register(TextPacket.ID, TextPacket.POOL::acquire);
+        packets.register(MovePlayerPacket.ID, MovePlayerPacket.POOL::acquire);
+        packets.register(RemoveBlockPacket.ID, RemoveBlockPacket::new);
+        packets.register(UseItemPacket.ID, UseItemPacket::new);
     }
 
     public void shutdown() {
@@ -12,6 +12,11 @@ public interface NetworkInterface {
     void setName(String name);
 
     void processData();
+
+    /**
+     * Sends the packets that were queued during this tick. Called once at the end of every tick.
+     */
+    void flush();
     void shutdown();
     void emergencyShutdown();
 }
@@ -0,0 +1,82 @@
+package redstonelamp.network;
+
+import redstonelamp.network.packet.DataPacket;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Outbound packets of one session that were prepared off the main thread, for example async compressed batches.
+ * <br>
+ * Any thread may add packets without locking, only the main thread drains them, in the order they were added.
+ */
+public class OutboundQueue {
+    private final Queue<DataPacket> packets = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicInteger highWaterMark = new AtomicInteger();
+    private final AtomicLong enqueued = new AtomicLong();
+
+    /**
+     * Adds a packet. Can be called from any thread.
+     * @param packet The DataPacket, not released to a pool while queued.
+     */
+    public void add(DataPacket packet){
+        packets.add(packet);
+        enqueued.incrementAndGet();
+        int size = depth.incrementAndGet();
+        int mark;
+        while(size > (mark = highWaterMark.get()) && !highWaterMark.compareAndSet(mark, size)){ }
+    }
+
+    /**
+     * Hands the packets that are queued right now to <code>sender</code>. Packets added meanwhile wait for the next drain.
+     * @param sender The consumer sending the packets.
+     * @return The amount of packets drained.
+     */
+    public int drain(Consumer<DataPacket> sender){
+        int count = depth.get();
+        int drained = 0;
+        while(drained < count){
+            DataPacket packet = packets.poll();
+            if(packet == null){
+                break;
+            }
+            depth.decrementAndGet();
+            drained++;
+            sender.accept(packet);
+        }
+        return drained;
+    }
+
+    /**
+     * Drops every queued packet, for example when the session closed.
+     */
+    public void clear(){
+        while(packets.poll() != null){
+            depth.decrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the amount of queued packets.
+     * @return int
+     */
+    public int size(){
+        return depth.get();
+    }
+
+    /**
+     * Returns the largest amount of packets that were queued at once.
+     * @return int
+     */
+    public int getHighWaterMark(){
+        return highWaterMark.get();
+    }
+
+    public long getEnqueuedCount(){
+        return enqueued.get();
+    }
+}
@@ -0,0 +1,107 @@
+package redstonelamp.network;
+
+import redstonelamp.Player;
+import redstonelamp.network.packet.BatchPacket;
+import redstonelamp.network.packet.DataPacket;
+import redstonelamp.utils.DynamicByteBuffer;
+
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Collects the outbound packets of one MCPE player during a tick, per channel, and sends each channel as a single
+ * zlib <code>BatchPacket</code> on <code>flush()</code>.
+ * <br>
+ * Packets are encoded when they are added, so the caller may reuse or release them right after sending.
+ */
+public class PacketBatcher {
+    private final static int CHANNELS = 32;
+
+    private final JRakLibInterface rakLibInterface;
+    private final Player player;
+    private final int maxBatchSize;
+
+    private final DynamicByteBuffer[] buffers = new DynamicByteBuffer[CHANNELS];
+    private final NetworkChannel[] channels = new NetworkChannel[CHANNELS];
+    private final int[] counts = new int[CHANNELS];
+    private int pending = 0;
+
+    /**
+     * Create a new PacketBatcher.
+     * @param rakLibInterface The interface the batches are sent on.
+     * @param player The Player.
+     * @param maxBatchSize The amount of uncompressed bytes after which a channel is flushed early.
+     */
+    public PacketBatcher(JRakLibInterface rakLibInterface, Player player, int maxBatchSize){
+        this.rakLibInterface = rakLibInterface;
+        this.player = player;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Adds a packet to the batch of its channel. Packets of at least <code>PENetworkInfo.COMPRESSION_LIMIT</code> bytes
+     * are compressed on their own, off the main thread.
+     * @param packet The DataPacket.
+     */
+    public synchronized void add(DataPacket packet){
+        NetworkChannel channel = packet.getChannel();
+        int index = channel.getAsByte();
+        DynamicByteBuffer bb = buffers[index];
+        if(bb == null){
+            bb = DynamicByteBuffer.newInstance(1024, ByteOrder.BIG_ENDIAN);
+            buffers[index] = bb;
+        }
+        int start = bb.size();
+        packet.encode(bb);
+        int len = bb.size() - start;
+
+        if(PENetworkInfo.COMPRESSION_LIMIT >= 0 && len >= PENetworkInfo.COMPRESSION_LIMIT){
+            byte[] payload = Arrays.copyOfRange(bb.array(), start, start + len);
+            bb.truncate(start);
+            rakLibInterface.getServer().getNetwork().sendBatch(new Player[] {player}, payload, channel);
+            return;
+        }
+
+        channels[index] = channel;
+        counts[index]++;
+        pending++;
+        if(bb.size() >= maxBatchSize){
+            flush(index);
+        }
+    }
+
+    /**
+     * Sends everything that was added since the last flush.
+     */
+    public synchronized void flush(){
+        if(pending == 0){
+            return;
+        }
+        for(int i = 0; i < CHANNELS; i++){
+            if(counts[i] > 0){
+                flush(i);
+            }
+        }
+    }
+
+    private void flush(int index){
+        DynamicByteBuffer bb = buffers[index];
+        if(counts[index] == 1){
+            //Not worth a compression pass
+            rakLibInterface.sendBuffer(player, bb.copyArray(), channels[index], false, false);
+        } else {
+            rakLibInterface.sendBuffer(player, BatchPacket.compress(bb.array(), 0, bb.size(), channels[index]).encode(), channels[index], false, false);
+        }
+        pending -= counts[index];
+        counts[index] = 0;
+        bb.clear();
+    }
+
+    /**
+     * Returns the amount of packets waiting for the next flush.
+     * @return int
+     */
+    public synchronized int getPendingCount(){
+        return pending;
+    }
+}
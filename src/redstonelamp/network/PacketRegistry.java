@@ -0,0 +1,72 @@
+package redstonelamp.network;
+
+import redstonelamp.network.packet.DataPacket;
+
+import java.util.function.Supplier;
+
+/**
+ * Table of packet factories indexed by unsigned packet ID, one per protocol (state).
+ * <br>
+ * Lookups are a single array read. Registration copies the table, so it is safe from any thread,
+ * plugins can register their own packets (or replace built-in ones) at any time.
+ */
+public class PacketRegistry<T extends DataPacket> {
+    public final static int SIZE = 256;
+
+    private volatile Supplier<? extends T>[] factories;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public PacketRegistry(){
+        factories = new Supplier[SIZE];
+    }
+
+    /**
+     * Registers a packet factory, replacing any previous one for this ID.
+     * @param id The packet ID, 0-255 (signed bytes are accepted and treated as unsigned).
+     * @param factory The factory, usually a constructor reference like <code>TextPacket::new</code>.
+     */
+    public synchronized void register(int id, Supplier<? extends T> factory){
+        if(factory == null){
+            throw new IllegalArgumentException("Factory can not be null.");
+        }
+        int index = index(id);
+        Supplier<? extends T>[] copy = factories.clone();
+        copy[index] = factory;
+        factories = copy;
+    }
+
+    /**
+     * Removes the packet factory for an ID.
+     * @param id The packet ID.
+     */
+    public synchronized void unregister(int id){
+        int index = index(id);
+        Supplier<? extends T>[] copy = factories.clone();
+        copy[index] = null;
+        factories = copy;
+    }
+
+    public boolean isRegistered(int id){
+        return id >= -128 && id < SIZE && factories[id & 0xFF] != null;
+    }
+
+    /**
+     * Creates a new packet for an ID.
+     * @param id The packet ID.
+     * @return A new packet, or null if the ID is not registered.
+     */
+    public T create(int id){
+        if(id < -128 || id >= SIZE){
+            return null;
+        }
+        Supplier<? extends T> factory = factories[id & 0xFF];
+        return factory != null ? factory.get() : null;
+    }
+
+    private int index(int id){
+        if(id < -128 || id >= SIZE){
+            throw new IllegalArgumentException("Packet ID out of range: " + id);
+        }
+        return id & 0xFF;
+    }
+}
@@ -0,0 +1,258 @@
+package redstonelamp.network;
+
+import redstonelamp.RedstoneLamp;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Token bucket rate limiter for the inbound packets of one session, with a bucket for the whole session and optional
+ * buckets per packet type.
+ * <br>
+ * Once a bucket is empty packets are throttled: held back and released as tokens refill. When a session keeps
+ * exceeding the rate within a second, its packets are dropped instead, and finally the player is kicked.
+ */
+public class RateLimiter {
+    private final static long SECOND = 1000000000L;
+
+    private final static AtomicLong totalThrottled = new AtomicLong();
+    private final static AtomicLong totalDropped = new AtomicLong();
+    private final static AtomicLong totalKicked = new AtomicLong();
+
+    public enum Action {
+        ALLOW,
+        THROTTLE,
+        DROP,
+        KICK
+    }
+
+    private final Settings settings;
+    private final TokenBucket session;
+    private final TokenBucket[] types = new TokenBucket[256];
+    private final Queue<byte[]> deferred = new ArrayDeque<>();
+
+    private long windowStart = System.nanoTime();
+    private int violations = 0;
+
+    private long allowed = 0;
+    private long throttled = 0;
+    private long dropped = 0;
+
+    /**
+     * Create a new RateLimiter.
+     * @param settings The limits.
+     */
+    public RateLimiter(Settings settings){
+        this.settings = settings;
+        long now = System.nanoTime();
+        session = new TokenBucket(settings.rate, settings.burst, now);
+        for(int i = 0; i < types.length; i++){
+            if(settings.typeRates[i] > 0){
+                types[i] = new TokenBucket(settings.typeRates[i], settings.typeRates[i] * 2, now);
+            }
+        }
+    }
+
+    /**
+     * Takes a token for a packet.
+     * @param pid The Packet ID (0-255), or -1 if only the session bucket applies.
+     * @return What to do with the packet.
+     */
+    public synchronized Action acquire(int pid){
+        if(!settings.enabled){
+            return Action.ALLOW;
+        }
+        long now = System.nanoTime();
+        if(!deferred.isEmpty()){
+            //While packets are held back, newer ones wait behind them to keep the order,
+            //but only a packet without tokens of its own counts as a violation
+            if(hasTokens(pid, now)){
+                throttled++;
+                totalThrottled.incrementAndGet();
+                return Action.THROTTLE;
+            }
+        } else if(tryConsume(pid, now)){
+            allowed++;
+            return Action.ALLOW;
+        }
+
+        if(now - windowStart >= SECOND){
+            windowStart = now;
+            violations = 0;
+        }
+        violations++;
+        if(settings.kickViolations > 0 && violations >= settings.kickViolations){
+            totalKicked.incrementAndGet();
+            return Action.KICK;
+        }
+        if(violations >= settings.dropViolations){
+            dropped++;
+            totalDropped.incrementAndGet();
+            return Action.DROP;
+        }
+        throttled++;
+        totalThrottled.incrementAndGet();
+        return Action.THROTTLE;
+    }
+
+    /**
+     * Holds back a throttled packet until <code>releaseDeferred()</code> finds tokens for it.
+     * @param buffer The raw packet, starting with the Packet ID.
+     * @return False if too many packets are held back, the packet is dropped then.
+     */
+    public synchronized boolean defer(byte[] buffer){
+        if(deferred.size() >= settings.maxDeferred){
+            dropped++;
+            totalDropped.incrementAndGet();
+            return false;
+        }
+        deferred.add(buffer);
+        return true;
+    }
+
+    /**
+     * Hands held back packets to <code>receiver</code>, in order, as long as there are tokens for them.
+     * @param receiver The consumer of the packets.
+     */
+    public synchronized void releaseDeferred(Consumer<byte[]> receiver){
+        long now = System.nanoTime();
+        byte[] buffer;
+        while((buffer = deferred.peek()) != null && tryConsume(buffer[0] & 0xFF, now)){
+            deferred.poll();
+            allowed++;
+            receiver.accept(buffer);
+        }
+    }
+
+    public synchronized boolean hasDeferred(){
+        return !deferred.isEmpty();
+    }
+
+    /**
+     * Returns the time until the session bucket has a token again.
+     * @return The delay in milliseconds, 0 if a token is available.
+     */
+    public synchronized long getRetryDelay(){
+        long now = System.nanoTime();
+        session.refill(now);
+        return session.tokens >= 1 ? 0 : (long) Math.ceil((1 - session.tokens) / session.rate * 1000);
+    }
+
+    private boolean hasTokens(int pid, long now){
+        TokenBucket type = pid >= 0 ? types[pid] : null;
+        session.refill(now);
+        if(type != null){
+            type.refill(now);
+        }
+        return session.tokens >= 1 && (type == null || type.tokens >= 1);
+    }
+
+    private boolean tryConsume(int pid, long now){
+        if(!hasTokens(pid, now)){
+            return false;
+        }
+        TokenBucket type = pid >= 0 ? types[pid] : null;
+        session.tokens--;
+        if(type != null){
+            type.tokens--;
+        }
+        return true;
+    }
+
+    public synchronized long getAllowedCount(){
+        return allowed;
+    }
+
+    public synchronized long getThrottledCount(){
+        return throttled;
+    }
+
+    public synchronized long getDroppedCount(){
+        return dropped;
+    }
+
+    /**
+     * Returns the amount of packets throttled by every session since startup.
+     * @return long
+     */
+    public static long getTotalThrottled(){
+        return totalThrottled.get();
+    }
+
+    public static long getTotalDropped(){
+        return totalDropped.get();
+    }
+
+    public static long getTotalKicked(){
+        return totalKicked.get();
+    }
+
+    private static class TokenBucket {
+        private final double rate;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill;
+
+        private TokenBucket(double rate, double capacity, long now){
+            this.rate = rate;
+            this.capacity = capacity;
+            this.tokens = capacity;
+            this.lastRefill = now;
+        }
+
+        private void refill(long now){
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * rate / SECOND);
+            lastRefill = now;
+        }
+    }
+
+    /**
+     * The limits shared by the sessions of an interface, read from the <code>rate-limit</code> section.
+     */
+    public static class Settings {
+        private boolean enabled = true;
+        private double rate = 300;
+        private double burst = 600;
+        private int dropViolations = 50;
+        private int kickViolations = 500;
+        private int maxDeferred = 256;
+        private final double[] typeRates = new double[256];
+
+        /**
+         * Loads the settings from the configuration.
+         * @param typesSection The section with per packet type limits, for example <code>rate-limit-mcpe</code>, or null.
+         * @return Settings
+         */
+        public static Settings load(String typesSection){
+            Settings settings = new Settings();
+            if(RedstoneLamp.yaml == null){
+                return settings;
+            }
+            settings.enabled = RedstoneLamp.yaml.getBoolean("rate-limit", "enabled", true);
+            settings.rate = RedstoneLamp.yaml.getDouble("rate-limit", "packets-per-second", settings.rate);
+            settings.burst = RedstoneLamp.yaml.getDouble("rate-limit", "burst", settings.burst);
+            settings.dropViolations = RedstoneLamp.yaml.getInt("rate-limit", "drop-after", settings.dropViolations);
+            settings.kickViolations = RedstoneLamp.yaml.getInt("rate-limit", "kick-after", settings.kickViolations);
+            settings.maxDeferred = RedstoneLamp.yaml.getInt("rate-limit", "max-deferred", settings.maxDeferred);
+            Object types = typesSection == null ? null : RedstoneLamp.yaml.getMap().get(typesSection);
+            if(types instanceof Map){
+                for(Object entry : ((Map<?, ?>) types).entrySet()){
+                    Map.Entry<?, ?> e = (Map.Entry<?, ?>) entry;
+                    try {
+                        settings.typeRates[Integer.decode(e.getKey().toString().trim()) & 0xFF] = Double.parseDouble(e.getValue().toString().trim());
+                    } catch(NumberFormatException ex) {
+                        //Ignore malformed entries, the session limit still applies
+                    }
+                }
+            }
+            return settings;
+        }
+
+        public boolean isEnabled(){
+            return enabled;
+        }
+    }
+}
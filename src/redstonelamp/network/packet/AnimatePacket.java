@@ -11,6 +11,8 @@ import redstonelamp.utils.DynamicByteBuffer;
 public class AnimatePacket extends DataPacket{
     public final static byte ID = PENetworkInfo.ANIMATE_PACKET;
 
+    public final static PacketPool<AnimatePacket> POOL = new PacketPool<>(AnimatePacket::new, 64);
+
     public byte action;
     public long eid;
 
@@ -19,6 +21,12 @@ public class AnimatePacket extends DataPacket{
         return PENetworkInfo.ANIMATE_PACKET;
     }
 
+    @Override
+    protected void reset() {
+        action = 0;
+        eid = 0;
+    }
+
     @Override
     protected void _encode(DynamicByteBuffer bb) {
         bb.putByte(action);
@@ -1,9 +1,14 @@
 package redstonelamp.network.packet;
 
 
+import redstonelamp.network.NetworkChannel;
 import redstonelamp.network.PENetworkInfo;
+import redstonelamp.utils.BufferPool;
+import redstonelamp.utils.CompressionUtils;
 import redstonelamp.utils.DynamicByteBuffer;
 
+import java.nio.ByteOrder;
+
 /**
  * MC_BATCH_PACKET (0xb1)
  */
@@ -12,6 +17,32 @@ public class BatchPacket extends DataPacket{
 
     public byte[] payload;
 
+    /**
+     * Compresses already encoded packets straight into a ready to send BatchPacket, without an intermediate payload copy.
+     * Can be called from any thread.
+     * @param packets The encoded packets.
+     * @param offset The offset in <code>packets</code>.
+     * @param len The amount of bytes.
+     * @param channel The channel of the batch.
+     * @return EncodedPacket
+     */
+    public static EncodedPacket compress(byte[] packets, int offset, int len, NetworkChannel channel){
+        BufferPool pool = BufferPool.getEncodePool();
+        DynamicByteBuffer bb = pool.acquire(ByteOrder.BIG_ENDIAN);
+        try {
+            bb.putByte(ID);
+            bb.putInt(0); //Payload length, written once it is known
+            int compressed = CompressionUtils.zlibDeflate(packets, offset, len, PENetworkInfo.COMPRESSION_LEVEL, bb);
+            bb.setPosition(1);
+            bb.putInt(compressed);
+            EncodedPacket packet = new EncodedPacket(bb.copyArray());
+            packet.setChannel(channel);
+            return packet;
+        } finally {
+            pool.release(bb);
+        }
+    }
+
     @Override
     public byte getPID() {
         return ID;
@@ -2,16 +2,24 @@ package redstonelamp.network.packet;
 
 import redstonelamp.item.Item;
 import redstonelamp.network.NetworkChannel;
+import redstonelamp.utils.BufferPool;
 import redstonelamp.utils.DynamicByteBuffer;
 
+import java.nio.ByteOrder;
+
 /**
  * Base class for all packets.
  */
 public abstract class DataPacket {
+    private final static int MAX_POOLED_HINT = 16 * 1024;
+
     private NetworkChannel channel = NetworkChannel.CHANNEL_NONE;
     private byte[] buffer;
     private int offset;
 
+    private PacketPool<?> pool;
+    private boolean released = false;
+
     /**
      * Get's this packet's Packet ID.
      * @return The Packet ID (byte).
@@ -23,10 +31,30 @@ public abstract class DataPacket {
      * @return The packet's bytes.
      */
     public byte[] encode(){
-        DynamicByteBuffer bb = DynamicByteBuffer.newInstance();
+        checkNotReleased();
+        if(getSizeHint() > MAX_POOLED_HINT){
+            DynamicByteBuffer bb = DynamicByteBuffer.newInstance(getSizeHint(), ByteOrder.BIG_ENDIAN);
+            encode(bb);
+            return bb.toArray();
+        }
+        BufferPool pool = BufferPool.getEncodePool();
+        DynamicByteBuffer bb = pool.acquire(ByteOrder.BIG_ENDIAN);
+        try {
+            encode(bb);
+            return bb.copyArray();
+        } finally {
+            pool.release(bb);
+        }
+    }
+
+    /**
+     * Encode this packet into <code>bb</code>, at its current position.
+     * @param bb The buffer to write to, for example a pooled buffer or a batch.
+     */
+    public void encode(DynamicByteBuffer bb){
+        checkNotReleased();
         bb.putByte(getPID());
         _encode(bb);
-        return bb.toArray();
     }
 
     /**
@@ -34,6 +62,7 @@ public abstract class DataPacket {
      * @param buffer The packet's raw bytes.
      */
     public void decode(byte[] buffer){
+        checkNotReleased();
         this.buffer = buffer;
         DynamicByteBuffer bb = DynamicByteBuffer.newInstance(buffer);
         bb.setPosition(1);
@@ -48,14 +77,64 @@ public abstract class DataPacket {
      * @param offset The position to start at.
      */
     public void decode(byte[] buffer, int offset){
+        checkNotReleased();
         this.buffer = buffer;
         DynamicByteBuffer bb = DynamicByteBuffer.newInstance(buffer);
         bb.setPosition(offset);
         _decode(bb);
-        offset = bb.getPosition();
+        this.offset = bb.getPosition();
         bb = null;
     }
 
+    /**
+     * Returns the expected encoded size of this packet, used to size the encode buffer up front.
+     * @return The size in bytes.
+     */
+    protected int getSizeHint(){
+        return 64;
+    }
+
+    /**
+     * Returns this packet to the pool it was acquired from, see <code>PacketPool</code>. Does nothing for packets
+     * created with <code>new</code>. The packet must not be used afterwards. Packets are encoded before
+     * <code>Player.sendDataPacket()</code> returns, so a pooled packet may be released right after sending it.
+     */
+    public void release(){
+        if(pool != null){
+            pool.release(this);
+        }
+    }
+
+    /**
+     * Resets the fields of a pooled packet before it is reused. Pooled packet types override this.
+     */
+    protected void reset(){
+
+    }
+
+    public boolean isReleased(){
+        return released;
+    }
+
+    void onAcquire(PacketPool<?> pool){
+        this.pool = pool;
+        released = false;
+    }
+
+    void recycle(){
+        reset();
+        channel = NetworkChannel.CHANNEL_NONE;
+        buffer = null;
+        offset = 0;
+        released = true;
+    }
+
+    protected final void checkNotReleased(){
+        if(released){
+            throw new IllegalStateException(getClass().getSimpleName() + " was used after it was released");
+        }
+    }
+
     protected abstract void _encode(DynamicByteBuffer bb);
     protected abstract void _decode(DynamicByteBuffer bb);
 
@@ -0,0 +1,94 @@
+package redstonelamp.network.packet;
+
+import redstonelamp.utils.DynamicByteBuffer;
+
+/**
+ * A packet that was already encoded, used to send the same bytes to many players.
+ * <br>
+ * The bytes are shared by every recipient and must not be modified. An EncodedPacket is never released to a pool,
+ * so it can be kept after sending, for example in a send queue.
+ */
+public class EncodedPacket extends DataPacket {
+    private final byte[] bytes;
+
+    /**
+     * Create a new EncodedPacket.
+     * @param bytes The encoded packet, starting with the Packet ID.
+     */
+    public EncodedPacket(byte[] bytes){
+        if(bytes.length == 0){
+            throw new IllegalArgumentException("Encoded packet can not be empty.");
+        }
+        this.bytes = bytes;
+    }
+
+    /**
+     * Encodes a packet once. The original packet may be changed or released afterwards.
+     * @param packet The DataPacket.
+     * @return EncodedPacket, on the same channel as <code>packet</code>.
+     */
+    public static EncodedPacket of(DataPacket packet){
+        if(packet instanceof EncodedPacket){
+            return (EncodedPacket) packet;
+        }
+        EncodedPacket encoded = new EncodedPacket(packet.encode());
+        encoded.setChannel(packet.getChannel());
+        return encoded;
+    }
+
+    @Override
+    public byte getPID() {
+        return bytes[0];
+    }
+
+    /**
+     * Returns the shared bytes, without copying.
+     * @return byte[]
+     */
+    @Override
+    public byte[] encode(){
+        return bytes;
+    }
+
+    @Override
+    public void encode(DynamicByteBuffer bb){
+        bb.put(bytes);
+    }
+
+    @Override
+    protected int getSizeHint(){
+        return bytes.length;
+    }
+
+    public int getLength(){
+        return bytes.length;
+    }
+
+    @Override
+    protected void _encode(DynamicByteBuffer bb) {
+        bb.put(bytes, 1, bytes.length - 1);
+    }
+
+    /**
+     * EncodedPacket is outbound only and never registered for decoding.
+     * @throws IllegalStateException Always.
+     */
+    @Override
+    public void decode(byte[] buffer){
+        throw new IllegalStateException("EncodedPacket can not be decoded.");
+    }
+
+    /**
+     * EncodedPacket is outbound only and never registered for decoding.
+     * @throws IllegalStateException Always.
+     */
+    @Override
+    public void decode(byte[] buffer, int offset){
+        throw new IllegalStateException("EncodedPacket can not be decoded.");
+    }
+
+    @Override
+    protected void _decode(DynamicByteBuffer bb) {
+
+    }
+}
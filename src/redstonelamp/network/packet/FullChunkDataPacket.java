@@ -18,6 +18,11 @@ public class FullChunkDataPacket extends DataPacket{
         return PENetworkInfo.FULL_CHUNK_DATA_PACKET;
     }
 
+    @Override
+    protected int getSizeHint() {
+        return 13 + (payload != null ? payload.length : 0);
+    }
+
     @Override
     protected void _encode(DynamicByteBuffer bb) {
         bb.putInt(x);
@@ -11,6 +11,8 @@ import redstonelamp.utils.DynamicByteBuffer;
 public class MovePlayerPacket extends DataPacket{
     public final static byte ID = PENetworkInfo.MOVE_PLAYER_PACKET;
 
+    public final static PacketPool<MovePlayerPacket> POOL = new PacketPool<>(MovePlayerPacket::new, 512);
+
     public final static byte MODE_NORMAL = 0;
     public final static byte MODE_RESET = 1;
     public final static byte MODE_ROTATION = 2;
@@ -30,6 +32,19 @@ public class MovePlayerPacket extends DataPacket{
         return PENetworkInfo.MOVE_PLAYER_PACKET;
     }
 
+    @Override
+    protected void reset() {
+        eid = 0;
+        x = 0;
+        y = 0;
+        z = 0;
+        yaw = 0;
+        bodyYaw = 0;
+        pitch = 0;
+        mode = MODE_NORMAL;
+        onGround = false;
+    }
+
     @Override
     protected void _encode(DynamicByteBuffer bb) {
         bb.putLong(eid);
@@ -0,0 +1,94 @@
+package redstonelamp.network.packet;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Pool of recyclable packets of one type. Packets taken with <code>acquire()</code> are returned with
+ * <code>DataPacket.release()</code>, which calls the packet's <code>reset()</code> hook.
+ * <br>
+ * In debug mode released packets are never handed out again, and encoding or decoding one throws an
+ * <code>IllegalStateException</code>, so code that keeps a packet after releasing it is found instead of
+ * silently sending another player's data.
+ */
+public class PacketPool<T extends DataPacket> {
+    private static volatile boolean debug = false;
+
+    private final Supplier<T> factory;
+    private final int capacity;
+    private final Queue<T> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+
+    /**
+     * Create a new PacketPool.
+     * @param factory Creates new packets when the pool is empty.
+     * @param capacity The maximum amount of idle packets kept.
+     */
+    public PacketPool(Supplier<T> factory, int capacity){
+        this.factory = factory;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Takes a packet from the pool, or creates one.
+     * @return T
+     */
+    public T acquire(){
+        T packet = free.poll();
+        if(packet == null){
+            packet = factory.get();
+            created.incrementAndGet();
+        } else {
+            size.decrementAndGet();
+            reused.incrementAndGet();
+        }
+        packet.onAcquire(this);
+        return packet;
+    }
+
+    @SuppressWarnings("unchecked")
+    void release(DataPacket packet){
+        if(packet.isReleased()){
+            throw new IllegalStateException(packet.getClass().getSimpleName() + " was released twice");
+        }
+        packet.recycle();
+        if(debug){
+            return;
+        }
+        if(size.incrementAndGet() <= capacity){
+            free.offer((T) packet);
+        } else {
+            size.decrementAndGet();
+        }
+    }
+
+    public long getCreatedCount(){
+        return created.get();
+    }
+
+    public long getReusedCount(){
+        return reused.get();
+    }
+
+    public int getIdleCount(){
+        return size.get();
+    }
+
+    public static boolean isDebug(){
+        return debug;
+    }
+
+    /**
+     * Enables use-after-release detection for all pools.
+     * @param debug The new debug state.
+     */
+    public static void setDebug(boolean debug){
+        PacketPool.debug = debug;
+    }
+}
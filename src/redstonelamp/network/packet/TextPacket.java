@@ -9,6 +9,8 @@ import redstonelamp.utils.DynamicByteBuffer;
 public class TextPacket extends DataPacket{
     public final static byte ID = PENetworkInfo.TEXT_PACKET;
 
+    public final static PacketPool<TextPacket> POOL = new PacketPool<>(TextPacket::new, 128);
+
     public final static byte TYPE_RAW = 0;
     public final static byte TYPE_CHAT = 1;
     public final static byte TYPE_TRANSLATION = 2;
@@ -25,6 +27,14 @@ public class TextPacket extends DataPacket{
         return PENetworkInfo.TEXT_PACKET;
     }
 
+    @Override
+    protected void reset() {
+        type = 0;
+        source = null;
+        message = null;
+        parameters = null;
+    }
+
     @Override
     protected void _encode(DynamicByteBuffer bb) {
         bb.putByte(type);
@@ -13,6 +13,8 @@ import java.util.List;
 public class UpdateBlockPacket extends DataPacket{
     public final static byte ID = PENetworkInfo.UPDATE_BLOCK_PACKET;
 
+    public final static PacketPool<UpdateBlockPacket> POOL = new PacketPool<>(UpdateBlockPacket::new, 64);
+
     public final static byte FLAG_NONE = 0b00000;
     public final static byte FLAG_NEIGHBORS = 0b00001;
     public final static byte FLAG_NETWORK = 0b0010;
@@ -29,6 +31,11 @@ public class UpdateBlockPacket extends DataPacket{
         return PENetworkInfo.UPDATE_BLOCK_PACKET;
     }
 
+    @Override
+    protected void reset() {
+        records = null;
+    }
+
     @Override
     protected void _encode(DynamicByteBuffer bb) {
         bb.putInt(records.size());
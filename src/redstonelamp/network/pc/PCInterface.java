@@ -2,6 +2,7 @@ package redstonelamp.network.pc;
 
 import org.apache.mina.core.service.IoAcceptor;
 import org.apache.mina.core.session.IdleStatus;
+import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolCodecFilter;
 import org.apache.mina.filter.logging.LoggingFilter;
 import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
@@ -10,6 +11,8 @@ import redstonelamp.Player;
 import redstonelamp.RedstoneLamp;
 import redstonelamp.Server;
 import redstonelamp.network.NetworkInterface;
+import redstonelamp.network.PacketRegistry;
+import redstonelamp.network.RateLimiter;
 import redstonelamp.network.packet.DataPacket;
 import redstonelamp.network.pc.codec.HeaderDecoder;
 import redstonelamp.network.pc.codec.HeaderEncoder;
@@ -18,8 +21,6 @@ import redstonelamp.network.pc.packet.login.LoginStartPacket;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * PC Networking interface.
@@ -27,12 +28,15 @@ import java.util.concurrent.ConcurrentHashMap;
 public class PCInterface implements NetworkInterface{
     private Server server;
 
-    private Map<Integer, Class<? extends PCDataPacket>> playPackets = new ConcurrentHashMap<>();
-    private Map<Integer, Class<? extends PCDataPacket>> loginPackets = new ConcurrentHashMap<>(); //Login packets from the client
+    private final PacketRegistry<PCDataPacket> playPackets = new PacketRegistry<>();
+    private final PacketRegistry<PCDataPacket> loginPackets = new PacketRegistry<>(); //Login packets from the client
 
     private IoAcceptor acceptor;
     private PCProtocolHandler handler;
 
+    private final static String RATE_LIMITER = "rateLimiter";
+    private final RateLimiter.Settings rateLimitSettings = RateLimiter.Settings.load(null);
+
     public PCInterface(Server server){
         this.server = server;
 
@@ -56,38 +60,68 @@ public class PCInterface implements NetworkInterface{
         }
     }
 
-    public PCDataPacket getPlayPacket(int pid){
-        if(playPackets.containsKey(pid)){
-            try {
-                return playPackets.get(pid).newInstance();
-            } catch (InstantiationException e) {
-                e.printStackTrace();
-            } catch (IllegalAccessException e) {
-                e.printStackTrace();
+    /**
+     * Applies the rate limit to one inbound frame, before it is decoded. Called on the MINA I/O thread.
+     * Throttled sessions stop reading until they have tokens again, flooding sessions are closed.
+     * @param session The IoSession.
+     * @return False if the frame should be dropped.
+     */
+    public boolean checkRate(IoSession session){
+        RateLimiter limiter = (RateLimiter) session.getAttribute(RATE_LIMITER);
+        if(limiter == null){
+            limiter = new RateLimiter(rateLimitSettings);
+            RateLimiter old = (RateLimiter) session.setAttributeIfAbsent(RATE_LIMITER, limiter);
+            if(old != null){
+                limiter = old;
             }
         }
-        return null;
+        switch(limiter.acquire(-1)){
+            case ALLOW:
+                return true;
+            case THROTTLE:
+                session.suspendRead();
+                long ticks = Math.max(1, (limiter.getRetryDelay() + 49) / 50);
+                server.getScheduler().runTaskLater(server, session::resumeRead, ticks);
+                return true;
+            case DROP:
+                return false;
+            default:
+                session.suspendRead();
+                server.getScheduler().runTask(server, () -> {
+                    Player player = server.getPlayer(session);
+                    server.getLogger().warning(session.getRemoteAddress()+" was disconnected for sending too many packets");
+                    if(player != null){
+                        player.close(" left the game", "Sending too many packets", true);
+                    } else {
+                        session.close(true);
+                    }
+                });
+                return false;
+        }
+    }
+
+    public PCDataPacket getPlayPacket(int pid){
+        return playPackets.create(pid);
     }
 
     public PCDataPacket getLoginPacket(int pid) {
-        if(loginPackets.containsKey(pid)) {
-            try {
-                return loginPackets.get(pid).newInstance();
-            } catch (InstantiationException e) {
-                e.printStackTrace();
-            } catch (IllegalAccessException e) {
-                e.printStackTrace();
-            }
-        }
-        return null;
+        return loginPackets.create(pid);
     }
 
-    private void registerPlayPacket(int pid, Class<? extends PCDataPacket> clazz){
-        playPackets.put(pid, clazz);
+    /**
+     * Returns the registry of inbound play state packets, plugins can register custom packets here.
+     * @return PacketRegistry<PCDataPacket>
+     */
+    public PacketRegistry<PCDataPacket> getPlayPacketRegistry(){
+        return playPackets;
     }
 
-    private void registerLoginPacket(int pid, Class<? extends PCDataPacket> clazz){
-        loginPackets.put(pid, clazz);
+    /**
+     * Returns the registry of inbound login state packets.
+     * @return PacketRegistry<PCDataPacket>
+     */
+    public PacketRegistry<PCDataPacket> getLoginPacketRegistry(){
+        return loginPackets;
     }
 
     private void registerPackets() {
@@ -96,7 +130,7 @@ public class PCInterface implements NetworkInterface{
     }
 
     private void registerLoginPackets() {
-        loginPackets.put(LoginStartPacket.ID, LoginStartPacket.class);
+        loginPackets.register(LoginStartPacket.ID, LoginStartPacket::new);
     }
 
     private void registerPlayPackets() {
@@ -131,6 +165,11 @@ public class PCInterface implements NetworkInterface{
 
     }
 
+    @Override
+    public void flush() {
+        //MINA writes every packet as it is sent
+    }
+
     @Override
     public void shutdown() {
         acceptor.unbind();
@@ -36,7 +36,7 @@ public class PCProtocolHandler extends IoHandlerAdapter {
 	public void messageReceived(IoSession session, Object message) throws Exception {
 		MinecraftPacket pkt = (MinecraftPacket) message;
 
-		Player player = pcInterface.getServer().getPlayer(session.getRemoteAddress().toString());
+		Player player = pcInterface.getServer().getPlayer(session);
 		if (player instanceof DesktopPlayer) {
 			PCDataPacket packet;
 			if(((DesktopPlayer) player).getProtocolState() == ProtocolState.STATE_LOGIN) {
@@ -92,27 +92,27 @@ public class PCProtocolHandler extends IoHandlerAdapter {
 		event.setOnlinePlayers(pcInterface.getServer().getOnlinePlayers().size());
 		event.setMotd(pcInterface.getServer().getMotd());
 		event.setIcon(pcInterface.getServer().getIcon());
-		pcInterface.getServer().throwEvent(event);
+		pcInterface.getServer().throwEventAsync(event).thenAccept(e -> {
+			version.put("name", event.getProtocolTag());
+			version.put("protocol", event.getProtocol());
 
-		version.put("name", event.getProtocolTag());
-		version.put("protocol", event.getProtocol());
+			players.put("max", event.getMaxPlayers());
+			players.put("online", event.getOnlinePlayers());
 
-		players.put("max", event.getMaxPlayers());
-		players.put("online", event.getOnlinePlayers());
+			description.put("text", event.getMotd());
 
-		description.put("text", event.getMotd());
+			root.put("version", version);
+			root.put("players", players);
+			root.put("description", description);
 
-		root.put("version", version);
-		root.put("players", players);
-		root.put("description", description);
+			ServerIcon icon = event.getIcon();
+			if (icon != null)
+				root.put("favicon", icon.toString());
 
-		ServerIcon icon = event.getIcon();
-		if (icon != null)
-			root.put("favicon", icon.toString());
-
-		StatusResponse response = new StatusResponse();
-		response.jsonResponse = root.toJSONString();
-		session.write(response);
+			StatusResponse response = new StatusResponse();
+			response.jsonResponse = root.toJSONString();
+			session.write(response);
+		});
 	}
 
 	@Override
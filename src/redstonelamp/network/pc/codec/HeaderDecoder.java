@@ -30,7 +30,7 @@ public class HeaderDecoder extends DemuxingProtocolDecoder{
 
         boolean compression = false;
 
-        Player player = pcInterface.getServer().getPlayer(session.getRemoteAddress().toString());
+        Player player = pcInterface.getServer().getPlayer(session);
         if(player != null){
             DesktopPlayer dp = (DesktopPlayer) player;
             compression = dp.isCompressionActivated();
@@ -42,9 +42,13 @@ public class HeaderDecoder extends DemuxingProtocolDecoder{
         if(compression) {
             int old = in.position();
             int uncompressedLen = readVarInt(in);
-            int varLen = old - in.position(); //Calculate the length of the VarInt, so we can get the correct amount of data
+            int varLen = in.position() - old; //Calculate the length of the VarInt, so we can get the correct amount of data
 
-            if(in.remaining() >= len){
+            if(in.remaining() >= len - varLen){
+                if(!pcInterface.checkRate(session)){
+                    in.skip(len - varLen);
+                    return true;
+                }
                 byte[] data = new byte[len - varLen];
                 in.get(data);
                 if(uncompressedLen > 0){ //If uncompressedLength is zero, then the packet is not compressed
@@ -57,6 +61,10 @@ public class HeaderDecoder extends DemuxingProtocolDecoder{
             }
         } else {
             if (in.remaining() >= len) {
+                if(!pcInterface.checkRate(session)){
+                    in.skip(len);
+                    return true;
+                }
                 byte[] data = new byte[len];
                 in.get(data);
                 out.write(new MinecraftPacket(data));
@@ -33,7 +33,7 @@ public class HeaderEncoder extends DemuxingProtocolEncoder{
             boolean compression = false;
             int threshold = -1;
 
-            Player player = pcInterface.getServer().getPlayer(session.getRemoteAddress().toString());
+            Player player = pcInterface.getServer().getPlayer(session);
             if(player != null){
                 DesktopPlayer dp = (DesktopPlayer) player;
                 compression = dp.isCompressionActivated();
@@ -51,7 +51,7 @@ public class HeaderEncoder extends DemuxingProtocolEncoder{
                 bb.put(uncompressedLenBytes);
                 bb.put(buffer);
             } else { //Compression is enabled, and the packet is greater than the threshold
-                byte[] compressed = CompressionUtils.zlibDeflate(buffer, 7); //TODO: correct level
+                byte[] compressed = CompressionUtils.zlibDeflate(buffer);
                 byte[] uncompressedLenBytes = Binary.newInstance(ByteOrder.BIG_ENDIAN).writeVarInt(buffer.length);
                 bb.putVarInt(compressed.length + uncompressedLenBytes.length);
                 bb.put(uncompressedLenBytes);
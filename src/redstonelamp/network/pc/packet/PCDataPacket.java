@@ -1,6 +1,7 @@
 package redstonelamp.network.pc.packet;
 
 import redstonelamp.network.packet.DataPacket;
+import redstonelamp.utils.BufferPool;
 import redstonelamp.utils.DynamicByteBuffer;
 
 import java.nio.ByteOrder;
@@ -19,10 +20,21 @@ public abstract class PCDataPacket extends DataPacket{
 
     @Override
     public byte[] encode() {
-        DynamicByteBuffer bb = DynamicByteBuffer.newInstance(ByteOrder.BIG_ENDIAN); //All MCPC data is BIG_ENDIAN
+        BufferPool pool = BufferPool.getEncodePool();
+        DynamicByteBuffer bb = pool.acquire(ByteOrder.BIG_ENDIAN); //All MCPC data is BIG_ENDIAN
+        try {
+            encode(bb);
+            return bb.copyArray();
+        } finally {
+            pool.release(bb);
+        }
+    }
+
+    @Override
+    public void encode(DynamicByteBuffer bb) {
+        checkNotReleased();
         bb.putVarInt(getPID());
         _encode(bb);
-        return bb.toArray();
     }
 
     @Override
@@ -2,7 +2,7 @@ package redstonelamp.plugin;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.MalformedURLException;
@@ -10,14 +10,13 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.security.Policy;
 
-import javax.script.Invocable;
 import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 
 import org.apache.commons.io.FilenameUtils;
 
 import redstonelamp.plugin.js.JavaScriptAPI;
+import redstonelamp.plugin.js.JavaScriptPlugin;
 import redstonelamp.plugin.js.api.JavaScriptPluginAPI;
 import redstonelamp.RedstoneLamp;
 import redstonelamp.cmd.CommandListener;
@@ -60,11 +59,10 @@ public class PluginLoader {
 			if(o instanceof PluginBase) {
 				PluginBase plugin = (PluginBase) o;
 				plugin.onEnable();
-			} else if(o instanceof Invocable) {
-				Invocable plugin = (Invocable) o;
+			} else if(o instanceof JavaScriptPlugin) {
 				try {
-					plugin.invokeFunction("onEnable");
-				} catch (NoSuchMethodException e) {} catch (ScriptException e) {
+					((JavaScriptPlugin) o).call("onEnable");
+				} catch (ScriptException e) {
 					e.printStackTrace();
 				}
 			}
@@ -76,14 +74,14 @@ public class PluginLoader {
 	 */
 	public void disablePlugins() {
 		for(Object o : RedstoneLamp.getServerInstance().getPluginManager().getPluginArray()) {
+			RedstoneLamp.getServerInstance().getScheduler().cancelTasks(o);
 			if(o instanceof PluginBase) {
 				PluginBase plugin = (PluginBase) o;
 				plugin.onDisable();
-			} else if(o instanceof Invocable) {
-				Invocable plugin = (Invocable) o;
+			} else if(o instanceof JavaScriptPlugin) {
 				try {
-					plugin.invokeFunction("onDisable");
-				} catch (NoSuchMethodException e) {} catch (ScriptException e) {
+					((JavaScriptPlugin) o).call("onDisable");
+				} catch (ScriptException e) {
 					e.printStackTrace();
 				}
 			}
@@ -133,14 +131,15 @@ public class PluginLoader {
 	}
 	
 	private void loadJSPlugin(File plugin) {
-		try {
-			String name = FilenameUtils.removeExtension(plugin.getName());
-			RedstoneLamp.getServerInstance().getLogger().info("Loading JavaScript plugin " + name + "...");
-			ScriptEngineManager _manager = new ScriptEngineManager();
-			ScriptEngine _engine = _manager.getEngineByName("JavaScript");
-			Reader reader = new InputStreamReader(new FileInputStream(plugin));
+		String name = FilenameUtils.removeExtension(plugin.getName());
+		RedstoneLamp.getServerInstance().getLogger().info("Loading JavaScript plugin " + name + "...");
+		ScriptEngine _engine = RedstoneLamp.getServerInstance().getPluginManager().getJavaScriptManager().createEngine();
+		if(_engine == null) {
+			RedstoneLamp.getServerInstance().getLogger().error("Failed to load plugin \"" + name + "\": No JavaScript engine available");
+			return;
+		}
+		try(Reader reader = new InputStreamReader(new FileInputStream(plugin))) {
 			_engine.put("api", new JavaScriptPluginAPI());
-			_engine.eval(reader);
 			for(JavaScriptAPI api : RedstoneLamp.getServerInstance().getPluginManager().getJavaScriptManager().getAPIClasses()) {
 				try {
 					_engine.put(api.getClass().getSimpleName().toLowerCase(), api.getClass().newInstance());
@@ -150,9 +149,10 @@ public class PluginLoader {
 					e.printStackTrace();
 				}
 			}
-			Invocable inv = (Invocable) _engine;
-			RedstoneLamp.getServerInstance().getPluginManager().getPluginArray().add(inv);
-		} catch(FileNotFoundException e) {
+			JavaScriptPlugin jsPlugin = new JavaScriptPlugin(name, _engine, reader);
+			RedstoneLamp.getServerInstance().getPluginManager().getPluginArray().add(jsPlugin);
+			RedstoneLamp.getServerInstance().getEventManager().registerScriptPlugin(jsPlugin);
+		} catch(IOException e) {
 			e.printStackTrace();
 		} catch(ScriptException e) {
 			e.printStackTrace();
@@ -2,10 +2,15 @@ package redstonelamp.plugin.js;
 
 import java.util.ArrayList;
 
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptEngineManager;
+
 import redstonelamp.RedstoneLamp;
 
 public class JavaScriptManager {
 	private ArrayList<JavaScriptAPI> api;
+	private ScriptEngineFactory factory;
 	
 	public JavaScriptManager() {
 		this.api = new ArrayList<JavaScriptAPI>();
@@ -19,4 +24,20 @@ public class JavaScriptManager {
 	public ArrayList<JavaScriptAPI> getAPIClasses() {
 		return this.api;
 	}
+
+	/**
+	 * Creates a new JavaScript engine. The engine factory is looked up once and shared by all plugins.
+	 *
+	 * @return ScriptEngine, or null if no JavaScript engine is available
+	 */
+	public synchronized ScriptEngine createEngine() {
+		if(factory == null) {
+			ScriptEngine engine = new ScriptEngineManager().getEngineByName("JavaScript");
+			if(engine == null)
+				return null;
+			factory = engine.getFactory();
+			return engine;
+		}
+		return factory.getScriptEngine();
+	}
 }
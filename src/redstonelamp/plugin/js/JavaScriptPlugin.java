@@ -0,0 +1,132 @@
+package redstonelamp.plugin.js;
+
+import java.io.Reader;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+/**
+ * A loaded JavaScript plugin. The functions a script defines are recorded once after it is evaluated,
+ * so callers check <code>hasFunction()</code> instead of relying on <code>NoSuchMethodException</code>.
+ */
+public class JavaScriptPlugin implements Invocable {
+	private final String name;
+	private final ScriptEngine engine;
+	private final Invocable invocable;
+	private final Set<String> functions = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Compiles and evaluates a script, then records the functions it defines
+	 *
+	 * @param String
+	 * @param ScriptEngine
+	 * @param Reader
+	 */
+	public JavaScriptPlugin(String name, ScriptEngine engine, Reader script) throws ScriptException {
+		this.name = name;
+		this.engine = engine;
+		this.invocable = (Invocable) engine;
+		if(engine instanceof Compilable)
+			((Compilable) engine).compile(script).eval();
+		else
+			engine.eval(script);
+		inspect();
+	}
+
+	private void inspect() throws ScriptException {
+		Bindings bindings = engine.getBindings(ScriptContext.ENGINE_SCOPE);
+		for(String key : bindings.keySet()) {
+			if(isIdentifier(key) && "function".equals(engine.eval("typeof " + key)))
+				functions.add(key);
+		}
+	}
+
+	private boolean isIdentifier(String key) {
+		if(key.isEmpty() || !Character.isJavaIdentifierStart(key.charAt(0)))
+			return false;
+		for(int i = 1; i < key.length(); i++) {
+			if(!Character.isJavaIdentifierPart(key.charAt(i)))
+				return false;
+		}
+		return true;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public ScriptEngine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * Returns true if the script defines a top-level function with this name
+	 *
+	 * @param String
+	 * @return boolean
+	 */
+	public boolean hasFunction(String function) {
+		return functions.contains(function);
+	}
+
+	/**
+	 * Returns the names of all top-level functions of the script
+	 *
+	 * @return Set<String>
+	 */
+	public Set<String> getFunctions() {
+		return Collections.unmodifiableSet(functions);
+	}
+
+	/**
+	 * Calls a function if the script defines it. Main thread only, the script engine is not thread safe
+	 *
+	 * @param String
+	 * @param Object...
+	 * @return boolean, true if the function exists and was called
+	 */
+	public boolean call(String function, Object... args) throws ScriptException {
+		if(!functions.contains(function))
+			return false;
+		try {
+			invocable.invokeFunction(function, args);
+		} catch(NoSuchMethodException e) {
+			//Redefined at runtime
+			functions.remove(function);
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public Object invokeMethod(Object thiz, String name, Object... args) throws ScriptException, NoSuchMethodException {
+		return invocable.invokeMethod(thiz, name, args);
+	}
+
+	@Override
+	public Object invokeFunction(String name, Object... args) throws ScriptException, NoSuchMethodException {
+		return invocable.invokeFunction(name, args);
+	}
+
+	@Override
+	public <T> T getInterface(Class<T> clasz) {
+		return invocable.getInterface(clasz);
+	}
+
+	@Override
+	public <T> T getInterface(Object thiz, Class<T> clasz) {
+		return invocable.getInterface(thiz, clasz);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -37,4 +37,41 @@ public class YamlConfiguration {
 		}
 		return this.map;
 	}
+	
+	/**
+	 * Returns a value from a section, or <code>def</code> if it is not set
+	 * 
+	 * @param String
+	 * @param String
+	 * @param String
+	 * @return String
+	 */
+	public String getString(String map, String key, String def) {
+		if(this.map.get(map) instanceof Map) {
+			Object value = ((Map) this.map.get(map)).get(key);
+			if(value != null)
+				return value.toString();
+		}
+		return def;
+	}
+	
+	public int getInt(String map, String key, int def) {
+		try {
+			return Integer.parseInt(getString(map, key, String.valueOf(def)).trim());
+		} catch(NumberFormatException e) {
+			return def;
+		}
+	}
+	
+	public double getDouble(String map, String key, double def) {
+		try {
+			return Double.parseDouble(getString(map, key, String.valueOf(def)).trim());
+		} catch(NumberFormatException e) {
+			return def;
+		}
+	}
+	
+	public boolean getBoolean(String map, String key, boolean def) {
+		return Boolean.parseBoolean(getString(map, key, String.valueOf(def)).trim());
+	}
 }
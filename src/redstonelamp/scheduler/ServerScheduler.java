@@ -0,0 +1,252 @@
+package redstonelamp.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import redstonelamp.RedstoneLamp;
+import redstonelamp.Server;
+import redstonelamp.plugin.Plugin;
+import redstonelamp.timings.Timing;
+
+/**
+ * Runs delayed and repeating tasks on the main thread, and async tasks on the worker pool.
+ * <br>
+ * All methods can be called from any thread. Sync tasks always run on the main thread during the scheduler's
+ * heartbeat at the start of a tick, in the order they became due.
+ */
+public class ServerScheduler {
+    private final static int WHEEL_SIZE = 512;
+
+    private final Server server;
+    private final TimingWheel wheel = new TimingWheel(WHEEL_SIZE);
+    private final Queue<Task> pending = new ConcurrentLinkedQueue<>();
+    private final List<Task> due = new ArrayList<>();
+    private final Map<Integer, Task> tasks = new ConcurrentHashMap<>();
+    private final Map<Object, TaskOwnerStats> ownerStats = new ConcurrentHashMap<>();
+    private final AtomicInteger nextTaskId = new AtomicInteger(1);
+    private final Timing timing;
+
+    public ServerScheduler(Server server){
+        this.server = server;
+        timing = server.getTimings().getFullServerTickTiming().getChild("Scheduler");
+    }
+
+    /**
+     * Runs a task on the main thread at the next heartbeat.
+     * @param owner The plugin (or Server) the task is accounted to.
+     * @param task The task.
+     * @return The task handle.
+     */
+    public Task runTask(Object owner, Runnable task){
+        return schedule(owner, task, 0, 0);
+    }
+
+    /**
+     * Runs a task on the main thread after <code>delay</code> ticks.
+     * @param owner The plugin (or Server) the task is accounted to.
+     * @param task The task.
+     * @param delay The delay in ticks.
+     * @return The task handle.
+     */
+    public Task runTaskLater(Object owner, Runnable task, long delay){
+        return schedule(owner, task, delay, 0);
+    }
+
+    /**
+     * Runs a task on the main thread after <code>delay</code> ticks, then every <code>period</code> ticks until cancelled.
+     * @param owner The plugin (or Server) the task is accounted to.
+     * @param task The task.
+     * @param delay The delay in ticks before the first run.
+     * @param period The ticks between runs, at least 1.
+     * @return The task handle.
+     */
+    public Task runTaskTimer(Object owner, Runnable task, long delay, long period){
+        return schedule(owner, task, delay, Math.max(1, period));
+    }
+
+    /**
+     * Runs a task on the async worker pool.
+     * @param owner The plugin (or Server) the task is accounted to.
+     * @param task The task.
+     * @return The task handle.
+     */
+    public Task runTaskAsync(Object owner, Runnable task){
+        Task handle = createTask(owner, task, false, 0);
+        RedstoneLamp.getAsync().execute(() -> runAsync(handle));
+        return handle;
+    }
+
+    /**
+     * Computes a value on the async worker pool, then hands it to <code>callback</code> on the main thread.
+     * The callback is not run if the task is cancelled or throws.
+     * @param owner The plugin (or Server) the task is accounted to.
+     * @param task The computation.
+     * @param callback The main thread callback.
+     * @return The task handle.
+     */
+    public <T> Task supplyAsync(Object owner, Callable<T> task, Consumer<? super T> callback){
+        Task[] handle = new Task[1];
+        handle[0] = createTask(owner, () -> {
+            T result;
+            try {
+                result = task.call();
+            } catch(Exception e) {
+                throw new RuntimeException(e);
+            }
+            if(!handle[0].isCancelled()){
+                runTask(owner, () -> {
+                    if(!handle[0].isCancelled()){
+                        callback.accept(result);
+                    }
+                });
+            }
+        }, false, 0);
+        RedstoneLamp.getAsync().execute(() -> runAsync(handle[0]));
+        return handle[0];
+    }
+
+    /**
+     * Cancels every task of an owner, for example when a plugin is disabled.
+     * @param owner The owner.
+     */
+    public void cancelTasks(Object owner){
+        for(Task task : tasks.values()){
+            if(task.getOwner() == owner){
+                task.cancel();
+            }
+        }
+    }
+
+    /**
+     * INTERNAL METHOD! Runs the tasks that are due, called by the main thread once per tick.
+     */
+    public void mainThreadHeartbeat(){
+        timing.startTiming();
+        try {
+            Task task;
+            while((task = pending.poll()) != null){
+                if(task.initialDelay <= 0){
+                    due.add(task);
+                } else {
+                    wheel.schedule(task, task.initialDelay);
+                }
+            }
+            wheel.advance(due);
+            for(int i = 0; i < due.size(); i++){
+                runSync(due.get(i));
+            }
+        } finally {
+            due.clear();
+            timing.stopTiming();
+        }
+    }
+
+    /**
+     * Returns the accounting of every owner that scheduled a task.
+     * @return Map<Object, TaskOwnerStats>
+     */
+    public Map<Object, TaskOwnerStats> getOwnerStats(){
+        return Collections.unmodifiableMap(ownerStats);
+    }
+
+    /**
+     * Returns the amount of tasks that are scheduled and not yet finished or cancelled.
+     * @return int
+     */
+    public int getPendingTaskCount(){
+        return tasks.size();
+    }
+
+    /**
+     * Returns the amount of heartbeats since the server started.
+     * @return long
+     */
+    public long getCurrentTick(){
+        return wheel.getTick();
+    }
+
+    private Task schedule(Object owner, Runnable runnable, long delay, long period){
+        Task task = createTask(owner, runnable, true, period);
+        task.initialDelay = delay;
+        pending.add(task);
+        return task;
+    }
+
+    private Task createTask(Object owner, Runnable runnable, boolean sync, long period){
+        if(owner == null){
+            throw new IllegalArgumentException("Task owner can not be null.");
+        }
+        Task task = new Task(nextTaskId.getAndIncrement(), owner, runnable, sync, period);
+        tasks.put(task.getTaskId(), task);
+        getStats(owner).onScheduled();
+        return task;
+    }
+
+    private void runSync(Task task){
+        if(task.isCancelled()){
+            tasks.remove(task.getTaskId());
+            return;
+        }
+        Timing ownerTiming = timing.getChild(getOwnerName(task.getOwner()));
+        ownerTiming.startTiming();
+        long start = System.nanoTime();
+        try {
+            task.getRunnable().run();
+        } catch(Throwable t) {
+            onTaskFailed(task, t);
+        } finally {
+            getStats(task.getOwner()).onRun(true, System.nanoTime() - start);
+            ownerTiming.stopTiming();
+        }
+        if(task.isRepeating() && !task.isCancelled()){
+            wheel.schedule(task, task.getPeriod());
+        } else {
+            tasks.remove(task.getTaskId());
+        }
+    }
+
+    private void runAsync(Task task){
+        if(task.isCancelled()){
+            tasks.remove(task.getTaskId());
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            task.getRunnable().run();
+        } catch(Throwable t) {
+            onTaskFailed(task, t);
+        } finally {
+            getStats(task.getOwner()).onRun(false, System.nanoTime() - start);
+            tasks.remove(task.getTaskId());
+        }
+    }
+
+    private void onTaskFailed(Task task, Throwable t){
+        getStats(task.getOwner()).onFailure();
+        server.getLogger().error("Task #" + task.getTaskId() + " of " + getOwnerName(task.getOwner()) + " threw " + t.getClass().getName() + ": " + t.getMessage());
+        t.printStackTrace();
+    }
+
+    private TaskOwnerStats getStats(Object owner){
+        TaskOwnerStats stats = ownerStats.get(owner);
+        if(stats == null){
+            stats = ownerStats.computeIfAbsent(owner, o -> new TaskOwnerStats());
+        }
+        return stats;
+    }
+
+    private String getOwnerName(Object owner){
+        if(owner instanceof Plugin && ((Plugin) owner).getName() != null){
+            return ((Plugin) owner).getName();
+        }
+        return owner.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,71 @@
+package redstonelamp.scheduler;
+
+/**
+ * Handle to a task submitted to the <code>ServerScheduler</code>.
+ */
+public class Task {
+    private final int taskId;
+    private final Object owner;
+    private final Runnable runnable;
+    private final boolean sync;
+    private final long period;
+    private volatile boolean cancelled = false;
+
+    long initialDelay;
+    long dueTick;
+
+    Task(int taskId, Object owner, Runnable runnable, boolean sync, long period){
+        this.taskId = taskId;
+        this.owner = owner;
+        this.runnable = runnable;
+        this.sync = sync;
+        this.period = period;
+    }
+
+    /**
+     * Cancels this task. A task that is currently running finishes, but will not run again.
+     */
+    public void cancel(){
+        cancelled = true;
+    }
+
+    public boolean isCancelled(){
+        return cancelled;
+    }
+
+    public int getTaskId(){
+        return taskId;
+    }
+
+    /**
+     * Returns the object this task is accounted to (a plugin, or the Server).
+     * @return Object
+     */
+    public Object getOwner(){
+        return owner;
+    }
+
+    /**
+     * Returns true if this task runs on the main thread.
+     * @return boolean
+     */
+    public boolean isSync(){
+        return sync;
+    }
+
+    public boolean isRepeating(){
+        return period > 0;
+    }
+
+    /**
+     * Returns the amount of ticks between runs, or zero if this task does not repeat.
+     * @return long
+     */
+    public long getPeriod(){
+        return period;
+    }
+
+    Runnable getRunnable(){
+        return runnable;
+    }
+}
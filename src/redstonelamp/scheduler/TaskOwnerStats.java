@@ -0,0 +1,61 @@
+package redstonelamp.scheduler;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-owner task accounting, so the time a plugin spends in scheduled tasks can be charged to it.
+ */
+public class TaskOwnerStats {
+    private final AtomicLong scheduled = new AtomicLong();
+    private final AtomicLong syncRuns = new AtomicLong();
+    private final AtomicLong syncNanos = new AtomicLong();
+    private final AtomicLong asyncRuns = new AtomicLong();
+    private final AtomicLong asyncNanos = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    void onScheduled(){
+        scheduled.incrementAndGet();
+    }
+
+    void onRun(boolean sync, long nanos){
+        if(sync){
+            syncRuns.incrementAndGet();
+            syncNanos.addAndGet(nanos);
+        } else {
+            asyncRuns.incrementAndGet();
+            asyncNanos.addAndGet(nanos);
+        }
+    }
+
+    void onFailure(){
+        failures.incrementAndGet();
+    }
+
+    public long getScheduledCount(){
+        return scheduled.get();
+    }
+
+    public long getSyncRunCount(){
+        return syncRuns.get();
+    }
+
+    /**
+     * Returns the total time spent running this owner's tasks on the main thread.
+     * @return long nanoseconds
+     */
+    public long getSyncNanos(){
+        return syncNanos.get();
+    }
+
+    public long getAsyncRunCount(){
+        return asyncRuns.get();
+    }
+
+    public long getAsyncNanos(){
+        return asyncNanos.get();
+    }
+
+    public long getFailureCount(){
+        return failures.get();
+    }
+}
@@ -0,0 +1,67 @@
+package redstonelamp.scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hashed timing wheel holding delayed main thread tasks. Scheduling and advancing are O(1) per task,
+ * tasks further away than one revolution simply stay in their slot until their tick comes around.
+ * <br>
+ * NOT thread safe, only the main thread may touch the wheel.
+ */
+class TimingWheel {
+    private final List<Task>[] slots;
+    private final int mask;
+    private List<Task> spare = new ArrayList<>();
+    private long tick = 0;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    TimingWheel(int size){
+        if(Integer.bitCount(size) != 1){
+            throw new IllegalArgumentException("Wheel size must be a power of two.");
+        }
+        slots = new List[size];
+        for(int i = 0; i < size; i++){
+            slots[i] = new ArrayList<>();
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Schedules a task to become due <code>delay</code> ticks from now.
+     * @param task The task.
+     * @param delay The delay in ticks, at least 1.
+     */
+    void schedule(Task task, long delay){
+        task.dueTick = tick + Math.max(1, delay);
+        slots[(int) (task.dueTick & mask)].add(task);
+    }
+
+    /**
+     * Advances the wheel by one tick and moves the tasks that became due into <code>due</code>.
+     * Cancelled tasks are handed out too, so the caller can forget them.
+     * @param due The list receiving the due tasks, in the order they were scheduled.
+     */
+    void advance(List<Task> due){
+        tick++;
+        int index = (int) (tick & mask);
+        List<Task> slot = slots[index];
+        if(slot.isEmpty()){
+            return;
+        }
+        slots[index] = spare;
+        for(Task task : slot){
+            if(task.dueTick <= tick || task.isCancelled()){
+                due.add(task);
+            } else {
+                slots[index].add(task);
+            }
+        }
+        slot.clear();
+        spare = slot;
+    }
+
+    long getTick(){
+        return tick;
+    }
+}
@@ -0,0 +1,138 @@
+package redstonelamp.timings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A named node in the timings tree. Only calls made on the main thread are recorded, calls from other threads are ignored.
+ * <br>
+ * Usage:
+ * <pre>
+ * timing.startTiming();
+ * try {
+ *     ...
+ * } finally {
+ *     timing.stopTiming();
+ * }
+ * </pre>
+ */
+public class Timing {
+    private final TimingsManager manager;
+    private final String name;
+    private final Timing parent;
+    private final Map<String, Timing> childrenByName = new ConcurrentHashMap<>();
+    private final List<Timing> children = new CopyOnWriteArrayList<>();
+    private final TimingHistogram histogram = new TimingHistogram();
+
+    private long count = 0;
+    private long totalNanos = 0;
+    private long maxNanos = 0;
+
+    private long start = 0;
+    private int depth = 0;
+
+    protected Timing(TimingsManager manager, String name, Timing parent){
+        this.manager = manager;
+        this.name = name;
+        this.parent = parent;
+    }
+
+    /**
+     * Returns the child timing with the given name, creating it if needed.
+     * @param name The name of the child.
+     * @return Timing
+     */
+    public Timing getChild(String name){
+        Timing child = childrenByName.get(name);
+        if(child == null){
+            synchronized (childrenByName){
+                child = childrenByName.get(name);
+                if(child == null){
+                    child = new Timing(manager, name, this);
+                    childrenByName.put(name, child);
+                    children.add(child);
+                }
+            }
+        }
+        return child;
+    }
+
+    public void startTiming(){
+        if(Thread.currentThread() != manager.getTimingThread()){
+            return;
+        }
+        if(depth++ == 0){
+            start = System.nanoTime();
+        }
+    }
+
+    public void stopTiming(){
+        if(Thread.currentThread() != manager.getTimingThread()){
+            return;
+        }
+        if(--depth == 0){
+            record(System.nanoTime() - start);
+        } else if(depth < 0){
+            depth = 0;
+        }
+    }
+
+    /**
+     * Records a single measured duration.
+     * @param nanos The duration in nanoseconds.
+     */
+    public void record(long nanos){
+        count++;
+        totalNanos += nanos;
+        if(nanos > maxNanos){
+            maxNanos = nanos;
+        }
+        histogram.record(nanos);
+    }
+
+    /**
+     * Resets this timing and all of its children.
+     */
+    public void reset(){
+        count = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+        histogram.reset();
+        children.forEach(Timing::reset);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Timing getParent() {
+        return parent;
+    }
+
+    public List<Timing> getChildren() {
+        return new ArrayList<>(children);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public double getAverageMillis() {
+        return count == 0 ? 0 : (totalNanos / (double) count) / 1000000D;
+    }
+
+    public TimingHistogram getHistogram() {
+        return histogram;
+    }
+}
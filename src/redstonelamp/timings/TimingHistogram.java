@@ -0,0 +1,64 @@
+package redstonelamp.timings;
+
+/**
+ * Fixed-size histogram of durations with power-of-two microsecond buckets.
+ * <br>
+ * Bucket 0 holds everything under 1us, bucket <code>i</code> holds [2^(i-1), 2^i) us and the last bucket holds everything above.
+ */
+public class TimingHistogram {
+    public final static int BUCKETS = 24;
+
+    private final long[] buckets = new long[BUCKETS];
+
+    public void record(long nanos){
+        long micros = nanos / 1000;
+        int bucket = micros <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+        if(bucket >= BUCKETS){
+            bucket = BUCKETS - 1;
+        }
+        buckets[bucket]++;
+    }
+
+    /**
+     * Returns the upper bound of bucket <code>i</code>, in microseconds.
+     * @param i The bucket index.
+     * @return long
+     */
+    public static long getUpperBoundMicros(int i){
+        return i >= BUCKETS - 1 ? Long.MAX_VALUE : 1L << i;
+    }
+
+    /**
+     * Returns an approximation of the given percentile, as the upper bound of the bucket it falls into.
+     * @param percentile The percentile, from 0 to 100.
+     * @return The approximated value in microseconds, or zero if nothing was recorded.
+     */
+    public long getPercentileMicros(double percentile){
+        long total = 0;
+        for(long count : buckets){
+            total += count;
+        }
+        if(total == 0){
+            return 0;
+        }
+        long target = (long) Math.ceil(total * (percentile / 100D));
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++){
+            seen += buckets[i];
+            if(seen >= target){
+                return i == BUCKETS - 1 ? getUpperBoundMicros(i - 1) : getUpperBoundMicros(i);
+            }
+        }
+        return getUpperBoundMicros(BUCKETS - 2);
+    }
+
+    public long[] getBuckets(){
+        return buckets.clone();
+    }
+
+    public void reset(){
+        for(int i = 0; i < BUCKETS; i++){
+            buckets[i] = 0;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package redstonelamp.timings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import redstonelamp.RedstoneLamp;
+import redstonelamp.event.Listener;
+import redstonelamp.network.NetworkInterface;
+import redstonelamp.plugin.PluginBase;
+
+/**
+ * Holds the server's timings tree and renders it into text and JSON reports.
+ * <br>
+ * The tree is laid out as: tick phases (under "Full Server Tick"), network interfaces (under "Network"),
+ * and event listeners grouped by the plugin that owns them.
+ */
+public class TimingsManager {
+    private volatile Thread timingThread = Thread.currentThread();
+
+    private final Timing fullServerTick = new Timing(this, "Full Server Tick", null);
+    private final Timing networkTick = fullServerTick.getChild("Network");
+    private final Timing levelTick = fullServerTick.getChild("Level");
+    private final Timing tickEvent = fullServerTick.getChild("ServerTickEvent");
+    private final Timing networkFlush = fullServerTick.getChild("Network Flush");
+
+    private final Timing listeners = new Timing(this, "Listeners", null);
+    private final Timing plugins = new Timing(this, "Plugins", null);
+
+    private final Map<Object, Timing> ownerTimings = new ConcurrentHashMap<>();
+    private long resetTime = System.currentTimeMillis();
+
+    /**
+     * Returns the thread whose timings are recorded, normally the main server thread.
+     * @return Thread
+     */
+    public Thread getTimingThread() {
+        return timingThread;
+    }
+
+    public void setTimingThread(Thread thread) {
+        timingThread = thread;
+    }
+
+    public Timing getFullServerTickTiming() {
+        return fullServerTick;
+    }
+
+    public Timing getNetworkTickTiming() {
+        return networkTick;
+    }
+
+    public Timing getLevelTickTiming() {
+        return levelTick;
+    }
+
+    public Timing getTickEventTiming() {
+        return tickEvent;
+    }
+
+    public Timing getNetworkFlushTiming() {
+        return networkFlush;
+    }
+
+    /**
+     * Returns the timing for a network interface, nested under the network tick.
+     * @param networkInterface The NetworkInterface.
+     * @return Timing
+     */
+    public Timing getNetworkInterfaceTiming(NetworkInterface networkInterface) {
+        return networkTick.getChild("Interface: " + networkInterface.getClass().getSimpleName());
+    }
+
+    /**
+     * Returns the timing for an event listener. Listeners loaded by a plugin's class loader are nested under that plugin.
+     * @param listener The Listener.
+     * @return Timing
+     */
+    public Timing getListenerTiming(Listener listener) {
+        Timing timing = ownerTimings.get(listener);
+        if(timing == null) {
+            PluginBase owner = findOwningPlugin(listener.getClass());
+            String name = "Listener: " + listener.getClass().getName();
+            timing = owner != null ? getPluginTiming(owner, getPluginName(owner)).getChild(name) : listeners.getChild(name);
+            ownerTimings.put(listener, timing);
+        }
+        return timing;
+    }
+
+    /**
+     * Returns the timing for a plugin (Java or JavaScript).
+     * @param plugin The plugin object.
+     * @param name The name to display.
+     * @return Timing
+     */
+    public Timing getPluginTiming(Object plugin, String name) {
+        Timing timing = ownerTimings.get(plugin);
+        if(timing == null) {
+            timing = plugins.getChild("Plugin: " + name);
+            ownerTimings.put(plugin, timing);
+        }
+        return timing;
+    }
+
+    /**
+     * Forgets a listener or plugin, so its timing is re-resolved the next time it is requested.
+     * @param owner The Listener or plugin object.
+     */
+    public void forget(Object owner) {
+        ownerTimings.remove(owner);
+    }
+
+    private PluginBase findOwningPlugin(Class<?> clazz) {
+        if(RedstoneLamp.getServerInstance() == null || RedstoneLamp.getServerInstance().getPluginManager() == null)
+            return null;
+        for(Object o : RedstoneLamp.getServerInstance().getPluginManager().getPluginArray()) {
+            if(o instanceof PluginBase && o.getClass().getClassLoader() == clazz.getClassLoader() && clazz.getClassLoader() != TimingsManager.class.getClassLoader())
+                return (PluginBase) o;
+        }
+        return null;
+    }
+
+    private String getPluginName(PluginBase plugin) {
+        return plugin.getName() != null ? plugin.getName() : plugin.getClass().getName();
+    }
+
+    /**
+     * Resets all recorded timings.
+     */
+    public void reset() {
+        fullServerTick.reset();
+        listeners.reset();
+        plugins.reset();
+        resetTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Renders all timings as human readable lines.
+     * @return List<String>
+     */
+    public List<String> getTextReport() {
+        List<String> lines = new ArrayList<>();
+        lines.add("Timings over the last " + ((System.currentTimeMillis() - resetTime) / 1000) + "s (avg / max / p95, % of tick time):");
+        for(Timing root : getRoots()) {
+            appendText(lines, root, 0);
+        }
+        return lines;
+    }
+
+    private void appendText(List<String> lines, Timing timing, int depth) {
+        if(timing.getCount() == 0 && timing.getChildren().isEmpty())
+            return;
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < depth; i++) {
+            sb.append("  ");
+        }
+        sb.append(timing.getName()).append(": ");
+        sb.append(String.format("%.3fms / %.3fms / %.3fms", timing.getAverageMillis(), timing.getMaxNanos() / 1000000D, timing.getHistogram().getPercentileMicros(95) / 1000D));
+        sb.append(String.format(", %.2f%%", getTickPercent(timing)));
+        sb.append(" (").append(timing.getCount()).append(" calls)");
+        lines.add(sb.toString());
+        for(Timing child : timing.getChildren()) {
+            appendText(lines, child, depth + 1);
+        }
+    }
+
+    /**
+     * Renders all timings as a JSON document.
+     * @return JSONObject
+     */
+    @SuppressWarnings("unchecked")
+    public JSONObject getJSONReport() {
+        JSONObject root = new JSONObject();
+        root.put("software", RedstoneLamp.SOFTWARE + " " + RedstoneLamp.VERSION);
+        root.put("start", resetTime);
+        root.put("end", System.currentTimeMillis());
+        JSONArray bounds = new JSONArray();
+        for(int i = 0; i < TimingHistogram.BUCKETS - 1; i++) {
+            bounds.add(TimingHistogram.getUpperBoundMicros(i));
+        }
+        root.put("histogramUpperBoundsMicros", bounds);
+        JSONArray timings = new JSONArray();
+        for(Timing timing : getRoots()) {
+            timings.add(toJSON(timing));
+        }
+        root.put("timings", timings);
+        return root;
+    }
+
+    @SuppressWarnings("unchecked")
+    private JSONObject toJSON(Timing timing) {
+        JSONObject obj = new JSONObject();
+        obj.put("name", timing.getName());
+        obj.put("count", timing.getCount());
+        obj.put("totalNanos", timing.getTotalNanos());
+        obj.put("maxNanos", timing.getMaxNanos());
+        obj.put("avgMillis", timing.getAverageMillis());
+        obj.put("tickPercent", getTickPercent(timing));
+        obj.put("p50Micros", timing.getHistogram().getPercentileMicros(50));
+        obj.put("p95Micros", timing.getHistogram().getPercentileMicros(95));
+        obj.put("p99Micros", timing.getHistogram().getPercentileMicros(99));
+        JSONArray histogram = new JSONArray();
+        for(long bucket : timing.getHistogram().getBuckets()) {
+            histogram.add(bucket);
+        }
+        obj.put("histogram", histogram);
+        JSONArray children = new JSONArray();
+        for(Timing child : timing.getChildren()) {
+            children.add(toJSON(child));
+        }
+        obj.put("children", children);
+        return obj;
+    }
+
+    private double getTickPercent(Timing timing) {
+        long tickTotal = fullServerTick.getTotalNanos();
+        return tickTotal == 0 ? 0 : (timing.getTotalNanos() * 100D) / tickTotal;
+    }
+
+    private List<Timing> getRoots() {
+        List<Timing> roots = new ArrayList<>();
+        roots.add(fullServerTick);
+        roots.add(listeners);
+        roots.add(plugins);
+        return roots;
+    }
+}
@@ -147,16 +147,17 @@ public class Binary {
      * @return
      */
     public byte[] writeVarInt(int i){
-        DynamicByteBuffer bb = DynamicByteBuffer.newInstance();
-        while (true) {
-            if ((i & 0xFFFFFF80) == 0) {
-                bb.putByte((byte) i);
-                return bb.toArray();
-            }
-
-            bb.putByte((byte) (i & 0x7F | 0x80));
+        int len = 1;
+        while((i >>> (7 * len)) != 0 && len < 5){
+            len++;
+        }
+        byte[] bytes = new byte[len];
+        for(int j = 0; j < len - 1; j++){
+            bytes[j] = (byte) (i & 0x7F | 0x80);
             i >>>= 7;
         }
+        bytes[len - 1] = (byte) i;
+        return bytes;
     }
 
     public byte readByte(byte b) {
@@ -0,0 +1,102 @@
+package redstonelamp.utils;
+
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-thread pool of reusable <code>DynamicByteBuffer</code>s for encoding packets.
+ * <br>
+ * A buffer must be released on the thread that acquired it, and must not be used after release. Buffers that
+ * grew beyond <code>maxRetainedBytes</code> are dropped instead of pooled, so one huge packet does not pin memory.
+ */
+public class BufferPool {
+    private final static BufferPool ENCODE_POOL = new BufferPool(4, 256 * 1024);
+
+    private final int maxPerThread;
+    private final int maxRetainedBytes;
+    private final ThreadLocal<ArrayDeque<DynamicByteBuffer>> buffers = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+
+    /**
+     * Create a new BufferPool.
+     * @param maxPerThread The amount of buffers kept per thread.
+     * @param maxRetainedBytes The largest capacity a buffer may have to be kept.
+     */
+    public BufferPool(int maxPerThread, int maxRetainedBytes){
+        this.maxPerThread = maxPerThread;
+        this.maxRetainedBytes = maxRetainedBytes;
+    }
+
+    /**
+     * Returns the pool used by <code>DataPacket.encode()</code>.
+     * @return BufferPool
+     */
+    public static BufferPool getEncodePool(){
+        return ENCODE_POOL;
+    }
+
+    /**
+     * Takes an empty buffer from this thread's pool, or allocates one.
+     * @param order The ByteOrder of the buffer.
+     * @return DynamicByteBuffer
+     */
+    public DynamicByteBuffer acquire(ByteOrder order){
+        acquired.incrementAndGet();
+        DynamicByteBuffer bb = buffers.get().pollLast();
+        if(bb == null){
+            return DynamicByteBuffer.newInstance(order);
+        }
+        reused.incrementAndGet();
+        bb.clear();
+        if(bb.getByteOrder() != order){ //setByteOrder() allocates a new Binary
+            bb.setByteOrder(order);
+        }
+        return bb;
+    }
+
+    /**
+     * Returns a buffer to this thread's pool.
+     * @param bb The buffer.
+     */
+    public void release(DynamicByteBuffer bb){
+        ArrayDeque<DynamicByteBuffer> deque = buffers.get();
+        if(bb.capacity() > maxRetainedBytes || deque.size() >= maxPerThread){
+            discarded.incrementAndGet();
+            return;
+        }
+        deque.addLast(bb);
+    }
+
+    public long getAcquiredCount(){
+        return acquired.get();
+    }
+
+    /**
+     * Returns how many acquisitions were served by a pooled buffer.
+     * @return long
+     */
+    public long getReusedCount(){
+        return reused.get();
+    }
+
+    /**
+     * Returns how many released buffers were dropped because they were too large or the pool was full.
+     * @return long
+     */
+    public long getDiscardedCount(){
+        return discarded.get();
+    }
+
+    /**
+     * Returns the share of acquisitions served by a pooled buffer, between 0 and 1.
+     * @return double
+     */
+    public double getHitRate(){
+        long total = acquired.get();
+        return total == 0 ? 0 : (double) reused.get() / total;
+    }
+}
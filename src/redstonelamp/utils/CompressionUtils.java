@@ -1,5 +1,6 @@
 package redstonelamp.utils;
 
+import java.nio.ByteOrder;
 import java.util.Arrays;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
@@ -7,37 +8,126 @@ import java.util.zip.Inflater;
 
 /**
  * Utility functions for compression/decompression.
+ * <br>
+ * Every thread reuses one <code>Deflater</code> and one <code>Inflater</code>, so no native zlib memory is
+ * allocated per call.
  */
 public class CompressionUtils {
+    /**
+     * The largest amount of bytes <code>zlibInflate()</code> will produce, anything larger is rejected.
+     */
+    public final static int MAX_INFLATED_SIZE = 8 * 1024 * 1024;
+
+    private final static ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, false));
+    private final static ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(false));
+
+    private static volatile int defaultLevel = 7;
+
+    public static int getDefaultLevel(){
+        return defaultLevel;
+    }
+
+    /**
+     * Sets the level used when no level is given.
+     * @param level The compression level, 0-9.
+     */
+    public static void setDefaultLevel(int level){
+        if(level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION){
+            throw new IllegalArgumentException("Invalid compression level: "+level);
+        }
+        defaultLevel = level;
+    }
+
+    public static byte[] zlibDeflate(byte[] uncompressed){
+        return zlibDeflate(uncompressed, 0, uncompressed.length, defaultLevel);
+    }
 
     public static byte[] zlibDeflate(byte[] uncompressed, int level){
-        Deflater deflater = new Deflater(level, false);
-        deflater.setInput(uncompressed);
-        deflater.finish();
+        return zlibDeflate(uncompressed, 0, uncompressed.length, level);
+    }
+
+    /**
+     * Compresses <code>len</code> bytes of an array, starting at <code>offset</code>.
+     * @param uncompressed The array.
+     * @param offset The offset in <code>uncompressed</code>.
+     * @param len The amount of bytes.
+     * @param level The compression level.
+     * @return The compressed bytes.
+     */
+    public static byte[] zlibDeflate(byte[] uncompressed, int offset, int len, int level){
+        BufferPool pool = BufferPool.getEncodePool();
+        DynamicByteBuffer bb = pool.acquire(ByteOrder.BIG_ENDIAN);
+        try {
+            zlibDeflate(uncompressed, offset, len, level, bb);
+            return bb.copyArray();
+        } finally {
+            pool.release(bb);
+        }
+    }
 
-        byte[] compressed = new byte[uncompressed.length];
-        int len = deflater.deflate(compressed);
+    /**
+     * Compresses <code>len</code> bytes of an array straight into <code>out</code>, at its current position.
+     * @param uncompressed The array.
+     * @param offset The offset in <code>uncompressed</code>.
+     * @param len The amount of bytes.
+     * @param level The compression level.
+     * @param out The buffer to write to, grown as needed.
+     * @return The amount of compressed bytes written.
+     */
+    public static int zlibDeflate(byte[] uncompressed, int offset, int len, int level, DynamicByteBuffer out){
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setLevel(level);
+        deflater.setInput(uncompressed, offset, len);
+        deflater.finish();
 
-        return Arrays.copyOf(compressed, len);
+        int start = out.getPosition();
+        //Small or incompressible input comes out slightly larger than it went in, large input is written in steps
+        int chunk = Math.min(64 * 1024, Math.max(64, (len >> 1) + 64));
+        while(!deflater.finished()){
+            out.ensureWritable(chunk);
+            out.advance(deflater.deflate(out.array(), out.getPosition(), chunk));
+        }
+        return out.getPosition() - start;
     }
 
     public static byte[] zlibInflate(byte[] compressed) throws DataFormatException {
-        Inflater inflater = new Inflater();
-        inflater.setInput(compressed);
-        byte[] uncompressed = new byte[64 * 64 * 64];
-        int len = inflater.inflate(uncompressed);
-        inflater.end();
-
-        return Arrays.copyOf(uncompressed, len);
+        return zlibInflate(compressed, 0, compressed.length);
     }
 
     public static byte[] zlibInflate(byte[] compressed, int size) throws DataFormatException {
-        Inflater inflater = new Inflater();
-        inflater.setInput(compressed, 0, size);
-        byte[] uncompressed = new byte[64 * 64 * 64];
-        int len = inflater.inflate(uncompressed);
-        inflater.end();
+        return zlibInflate(compressed, 0, size);
+    }
+
+    /**
+     * Decompresses <code>len</code> bytes of an array, starting at <code>offset</code>.
+     * @param compressed The array.
+     * @param offset The offset in <code>compressed</code>.
+     * @param len The amount of bytes.
+     * @return The decompressed bytes.
+     * @throws DataFormatException If the data is corrupt, truncated, or inflates beyond <code>MAX_INFLATED_SIZE</code>.
+     */
+    public static byte[] zlibInflate(byte[] compressed, int offset, int len) throws DataFormatException {
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(compressed, offset, len);
+
+        byte[] uncompressed = new byte[Math.min(MAX_INFLATED_SIZE, Math.max(256, len << 2))];
+        int written = 0;
+        while(!inflater.finished()){
+            if(written == uncompressed.length){
+                if(uncompressed.length >= MAX_INFLATED_SIZE){
+                    throw new DataFormatException("Inflated data is larger than "+MAX_INFLATED_SIZE+" bytes");
+                }
+                uncompressed = Arrays.copyOf(uncompressed, Math.min(MAX_INFLATED_SIZE, uncompressed.length << 1));
+            }
+            int n = inflater.inflate(uncompressed, written, uncompressed.length - written);
+            if(n == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())){
+                throw new DataFormatException("Truncated zlib data");
+            }
+            written += n;
+        }
 
-        return Arrays.copyOf(uncompressed, len);
+        return written == uncompressed.length ? uncompressed : Arrays.copyOf(uncompressed, written);
     }
 }
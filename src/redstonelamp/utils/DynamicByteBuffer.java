@@ -2,18 +2,23 @@ package redstonelamp.utils;
 
 
 import java.io.IOException;
-import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 /**
  * Represents a dynamically growing byte buffer.
+ * <br>
+ * Capacity grows geometrically, and primitives are written straight into the backing array in the buffer's byte order.
  */
 public class DynamicByteBuffer {
+    private final static int DEFAULT_CAPACITY = 64;
+
     private Binary binary;
     private ByteBuffer bb;
+    private int size = 0;
 
     private DynamicByteBuffer() { }
 
@@ -23,12 +28,7 @@ public class DynamicByteBuffer {
      * @return A new <code>DynamicByteBuffer</code> instance.
      */
     public static DynamicByteBuffer newInstance(byte[] bytes){
-        DynamicByteBuffer bb = new DynamicByteBuffer();
-        bb.setByteBuffer(ByteBuffer.wrap(bytes));
-        bb.setByteOrder(ByteOrder.BIG_ENDIAN);
-        bb.setPosition(0);
-        bb.binary = Binary.getDefaultInstance();
-        return bb;
+        return newInstance(bytes, ByteOrder.BIG_ENDIAN);
     }
 
     /**
@@ -42,7 +42,7 @@ public class DynamicByteBuffer {
         bb.setByteBuffer(ByteBuffer.wrap(bytes));
         bb.setByteOrder(order);
         bb.setPosition(0);
-        bb.binary = Binary.newInstance(order);
+        bb.size = bytes.length;
         return bb;
     }
 
@@ -51,12 +51,7 @@ public class DynamicByteBuffer {
      * @return A new <code>DynamicByteBuffer</code> instance.
      */
     public static DynamicByteBuffer newInstance(){
-        DynamicByteBuffer bb = new DynamicByteBuffer();
-        bb.setByteBuffer(ByteBuffer.allocate(0));
-        bb.setByteOrder(ByteOrder.BIG_ENDIAN);
-        bb.setPosition(0);
-        bb.binary = Binary.getDefaultInstance();
-        return bb;
+        return newInstance(ByteOrder.BIG_ENDIAN);
     }
 
     /**
@@ -64,30 +59,67 @@ public class DynamicByteBuffer {
      * @return A new <code>DynamicByteBuffer</code> instance.
      */
     public static DynamicByteBuffer newInstance(ByteOrder order){
+        return newInstance(DEFAULT_CAPACITY, order);
+    }
+
+    /**
+     * Create a new DynamicByteBuffer, ready for writing, with an initial capacity. Use this when the final size is roughly known.
+     * @param capacity The initial capacity in bytes.
+     * @param order The ByteOrder to be used.
+     * @return A new <code>DynamicByteBuffer</code> instance.
+     */
+    public static DynamicByteBuffer newInstance(int capacity, ByteOrder order){
         DynamicByteBuffer bb = new DynamicByteBuffer();
-        bb.setByteBuffer(ByteBuffer.allocate(0));
+        bb.setByteBuffer(ByteBuffer.allocate(capacity));
         bb.setByteOrder(order);
         bb.setPosition(0);
-        bb.binary = Binary.newInstance(order);
         return bb;
     }
 
+    /**
+     * Makes sure <code>len</code> more bytes can be written at the current position, growing the backing array
+     * to at least double its size if needed.
+     * @param len The amount of bytes about to be written.
+     */
+    public void ensureWritable(int len){
+        if(bb.capacity() - bb.position() >= len){
+            if(bb.limit() - bb.position() < len){
+                bb.limit(bb.capacity());
+            }
+            return;
+        }
+        int position = bb.position();
+        int capacity = Math.max(Math.max(bb.capacity() << 1, DEFAULT_CAPACITY), position + len);
+        ByteBuffer grown = ByteBuffer.allocate(capacity).order(bb.order());
+        System.arraycopy(bb.array(), 0, grown.array(), 0, Math.max(size, position));
+        grown.position(position);
+        bb = grown;
+    }
+
+    private void written(){
+        if(bb.position() > size){
+            size = bb.position();
+        }
+    }
+
     /**
      * Put a byte array into the buffer. If the array is too big, the buffer will extend to cover the amount.
      * @param bytes The byte[]
      */
     public void put(byte[] bytes){
-        try{
-            bb.put(bytes);
-        } catch(BufferOverflowException e){
-            bb.position(0);
-            byte[] data = new byte[bb.remaining()];
-            bb.get(data);
-
-            bb = ByteBuffer.allocate(data.length + bytes.length);
-            bb.put(data);
-            bb.put(bytes);
-        }
+        put(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Put <code>len</code> bytes of an array, starting at <code>offset</code>, into the buffer.
+     * @param bytes The byte[]
+     * @param offset The offset in <code>bytes</code>.
+     * @param len The amount of bytes.
+     */
+    public void put(byte[] bytes, int offset, int len){
+        ensureWritable(len);
+        bb.put(bytes, offset, len);
+        written();
     }
 
     /**
@@ -106,7 +138,9 @@ public class DynamicByteBuffer {
      * @param b The byte
      */
     public void putByte(byte b){
-        put(new byte[] {binary.writeByte(b)});
+        ensureWritable(1);
+        bb.put(b);
+        written();
     }
 
     /**
@@ -114,7 +148,9 @@ public class DynamicByteBuffer {
      * @param s The short
      */
     public void putShort(short s){
-        put(binary.writeShort(s));
+        ensureWritable(2);
+        bb.putShort(s);
+        written();
     }
 
     /**
@@ -122,67 +158,91 @@ public class DynamicByteBuffer {
      * @param us
      */
     public void putUnsignedShort(int us){
-        put(binary.writeUnsignedShort(us));
+        ensureWritable(2);
+        bb.putChar((char) us);
+        written();
     }
 
     //TODO: Finish docs
 
     public void putInt(int i){
-        put(binary.writeInt(i));
+        ensureWritable(4);
+        bb.putInt(i);
+        written();
     }
 
     public void putVarInt(int i){
-        put(binary.writeVarInt(i));
+        ensureWritable(5);
+        while((i & 0xFFFFFF80) != 0){
+            bb.put((byte) (i & 0x7F | 0x80));
+            i >>>= 7;
+        }
+        bb.put((byte) i);
+        written();
     }
 
     public void putLong(long l){
-        put(binary.writeLong(l));
+        ensureWritable(8);
+        bb.putLong(l);
+        written();
     }
 
     public void putFloat(float f){
-        put(binary.writeFloat(f));
+        ensureWritable(4);
+        bb.putFloat(f);
+        written();
     }
 
     public void putDouble(double d){
-        put(binary.writeDouble(d));
+        ensureWritable(8);
+        bb.putDouble(d);
+        written();
     }
 
     public void putLTriad(int t){
-        put(binary.writeLTriad(t));
+        ensureWritable(3);
+        bb.put((byte) t);
+        bb.put((byte) (t >>> 8));
+        bb.put((byte) (t >>> 16));
+        written();
     }
 
     public void putString(String s){
-        putShort((short) s.getBytes().length);
-        put(s.getBytes());
+        byte[] bytes = s.getBytes();
+        putShort((short) bytes.length);
+        put(bytes);
     }
 
     public void putPCString(String s){
-        putVarInt(s.getBytes(Charset.forName("UTF-8")).length);
-        put(s.getBytes(Charset.forName("UTF-8")));
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        putVarInt(bytes.length);
+        put(bytes);
     }
     
     public void putChar(char c){
-        put(binary.writeChar(c));
+        ensureWritable(2);
+        bb.putChar(c);
+        written();
     }
 
     public byte getByte(){
-        return binary.readByte(get(1)[0]);
+        return bb.get();
     }
 
     public int getUnsignedByte(){
-        return binary.readUnsignedByte(get(1)[0]);
+        return bb.get() & 0xFF;
     }
     
     public short getShort(){
-        return binary.readShort(get(2));
+        return bb.getShort();
     }
     
     public int getUnsignedShort(){
-        return binary.readUnsignedShort(get(2));
+        return bb.getShort() & 0xFFFF;
     }
     
     public int getInt(){
-        return binary.readInt(get(4));
+        return bb.getInt();
     }
 
     public int getVarInt() {
@@ -195,15 +255,15 @@ public class DynamicByteBuffer {
     }
     
     public long getLong(){
-        return binary.readLong(get(8));
+        return bb.getLong();
     }
     
     public float getFloat(){
-        return binary.readFloat(get(4));
+        return bb.getFloat();
     }
     
     public double getDouble(){
-        return binary.readDouble(get(8));
+        return bb.getDouble();
     }
     
     public int getLTriad(){
@@ -211,7 +271,7 @@ public class DynamicByteBuffer {
     }
 
     public String getString(){
-        return getString(Charset.forName("UTF-8"));
+        return getString(StandardCharsets.UTF_8);
     }
 
     public String getString(Charset charset){
@@ -219,17 +279,82 @@ public class DynamicByteBuffer {
     }
 
     public String getPCString(){
-        return new String(get(getVarInt()), Charset.forName("UTF-8"));
+        return new String(get(getVarInt()), StandardCharsets.UTF_8);
     }
     
     public char getChar(){
-        return binary.readChar(get(2));
+        return bb.getChar();
     }
 
+    /**
+     * Returns the bytes of this buffer, from the start up to the furthest position written (or the wrapped length).
+     * The backing array itself is returned when it has exactly that size, otherwise a trimmed copy.
+     * @return byte[]
+     */
     public byte[] toArray(){
+        byte[] array = bb.array();
+        return array.length == size ? array : Arrays.copyOf(array, size);
+    }
+
+    /**
+     * Returns the amount of bytes in this buffer, see <code>toArray()</code>.
+     * @return int
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Returns the backing array without copying. Only the first <code>size()</code> bytes are valid, and the array
+     * is replaced when the buffer grows.
+     * @return byte[]
+     */
+    public byte[] array(){
         return bb.array();
     }
 
+    /**
+     * Returns a copy of the first <code>size()</code> bytes, never the backing array itself.
+     * @return byte[]
+     */
+    public byte[] copyArray(){
+        return Arrays.copyOf(bb.array(), size);
+    }
+
+    public int capacity(){
+        return bb.capacity();
+    }
+
+    /**
+     * Empties the buffer for reuse, keeping its capacity.
+     */
+    public void clear(){
+        bb.clear();
+        size = 0;
+    }
+
+    /**
+     * Marks <code>len</code> bytes, written straight into <code>array()</code> at the current position, as written.
+     * Call <code>ensureWritable(len)</code> before writing them.
+     * @param len The amount of bytes.
+     */
+    public void advance(int len){
+        bb.position(bb.position() + len);
+        written();
+    }
+
+    /**
+     * Drops everything after the first <code>size</code> bytes and moves the position there.
+     * @param size The new size, not larger than the current one.
+     */
+    public void truncate(int size){
+        if(size > this.size){
+            throw new IllegalArgumentException("Can not truncate "+this.size+" bytes to "+size);
+        }
+        bb.position(size);
+        this.size = size;
+    }
+
     public String toString(){
         return Arrays.toString(toArray());
     }
@@ -0,0 +1,165 @@
+package redstonelamp.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Open addressing hash map with primitive int keys, so lookups neither box the key nor allocate entries.
+ * <br>
+ * NOT thread safe.
+ */
+public class IntObjectMap<V> {
+    private final static float LOAD_FACTOR = 0.5f;
+
+    private int[] keys;
+    private Object[] values;
+    private int mask;
+    private int size = 0;
+
+    public IntObjectMap(){
+        this(16);
+    }
+
+    /**
+     * Create a new IntObjectMap sized for <code>expected</code> entries.
+     * @param expected The expected amount of entries.
+     */
+    public IntObjectMap(int expected){
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expected / LOAD_FACTOR)) - 1) << 1;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key){
+        int index = indexOf(key);
+        return index < 0 ? null : (V) values[index];
+    }
+
+    public boolean containsKey(int key){
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Maps a key to a value.
+     * @param key The key.
+     * @param value The value, not null.
+     * @return The previous value, or null.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value){
+        if(value == null){
+            throw new IllegalArgumentException("Value can not be null.");
+        }
+        int index = hash(key) & mask;
+        while(values[index] != null){
+            if(keys[index] == key){
+                V old = (V) values[index];
+                values[index] = value;
+                return old;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value;
+        if(++size > keys.length * LOAD_FACTOR){
+            resize(keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * Removes a key.
+     * @param key The key.
+     * @return The removed value, or null.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key){
+        int index = indexOf(key);
+        if(index < 0){
+            return null;
+        }
+        V old = (V) values[index];
+        values[index] = null;
+        size--;
+        //Shift back the following entries of the probe sequence, so no tombstones are needed
+        int next = (index + 1) & mask;
+        while(values[next] != null){
+            int ideal = hash(keys[next]) & mask;
+            if(((next - ideal) & mask) >= ((next - index) & mask)){
+                keys[index] = keys[next];
+                values[index] = values[next];
+                values[next] = null;
+                index = next;
+            }
+            next = (next + 1) & mask;
+        }
+        return old;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    public void clear(){
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<? super V> consumer){
+        for(Object value : values){
+            if(value != null){
+                consumer.accept((V) value);
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the values.
+     * @return List<V>
+     */
+    public List<V> values(){
+        List<V> list = new ArrayList<>(size);
+        forEachValue(list::add);
+        return list;
+    }
+
+    private int indexOf(int key){
+        int index = hash(key) & mask;
+        while(values[index] != null){
+            if(keys[index] == key){
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void resize(int capacity){
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        size = 0;
+        for(int i = 0; i < oldKeys.length; i++){
+            if(oldValues[i] != null){
+                put(oldKeys[i], (V) oldValues[i]);
+            }
+        }
+    }
+
+    private static int hash(int key){
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
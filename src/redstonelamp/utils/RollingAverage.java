@@ -0,0 +1,55 @@
+package redstonelamp.utils;
+
+/**
+ * Fixed-size ring buffer of samples that keeps a running sum, so adding a sample and reading the average are both O(1).
+ */
+public class RollingAverage {
+    private final long[] samples;
+    private int index = 0;
+    private int count = 0;
+    private long sum = 0;
+
+    /**
+     * Create a new RollingAverage over the last <code>size</code> samples.
+     * @param size The amount of samples to average over.
+     */
+    public RollingAverage(int size){
+        if(size <= 0){
+            throw new IllegalArgumentException("Size must be positive.");
+        }
+        samples = new long[size];
+    }
+
+    /**
+     * Adds a sample, evicting the oldest one if the window is full.
+     * @param sample The sample.
+     */
+    public synchronized void add(long sample){
+        sum -= samples[index];
+        samples[index] = sample;
+        sum += sample;
+        index = (index + 1) % samples.length;
+        if(count < samples.length){
+            count++;
+        }
+    }
+
+    /**
+     * Returns the mean of the samples in the window, or zero if there are none.
+     * @return The average.
+     */
+    public synchronized double getAverage(){
+        if(count == 0){
+            return 0;
+        }
+        return (double) sum / count;
+    }
+
+    public synchronized int getCount(){
+        return count;
+    }
+
+    public int getSize(){
+        return samples.length;
+    }
+}
@@ -0,0 +1,78 @@
+package redstonelamp.utils;
+
+/**
+ * Rolling TPS (ticks per second) and MSPT (milliseconds per tick) averages over the last 1 second, 1 minute and 5 minutes.
+ * <br>
+ * Windows are sized in ticks at the target tick rate, so they cover a shorter real time span while the server is lagging.
+ */
+public class TickStatistics {
+    private final RollingAverage[] intervals;
+    private final RollingAverage[] durations;
+    private volatile long lastTickNanos = 0;
+    private volatile long ticks = 0;
+
+    public TickStatistics(int ticksPerSecond){
+        int[] windows = new int[] {ticksPerSecond, ticksPerSecond * 60, ticksPerSecond * 60 * 5};
+        intervals = new RollingAverage[windows.length];
+        durations = new RollingAverage[windows.length];
+        for(int i = 0; i < windows.length; i++){
+            intervals[i] = new RollingAverage(windows[i]);
+            durations[i] = new RollingAverage(windows[i]);
+        }
+    }
+
+    /**
+     * INTERNAL METHOD! Records a finished tick.
+     * @param intervalNanos Time between the start of the previous tick and the start of this one.
+     * @param durationNanos Time spent executing this tick.
+     */
+    public void record(long intervalNanos, long durationNanos){
+        for(int i = 0; i < intervals.length; i++){
+            intervals[i].add(intervalNanos);
+            durations[i].add(durationNanos);
+        }
+        lastTickNanos = durationNanos;
+        ticks++;
+    }
+
+    /**
+     * Returns the average ticks per second over the last 1s, 1m and 5m.
+     * @return double[] {1s, 1m, 5m}
+     */
+    public double[] getTicksPerSecond(){
+        double[] tps = new double[intervals.length];
+        for(int i = 0; i < intervals.length; i++){
+            double avg = intervals[i].getAverage();
+            tps[i] = avg > 0 ? 1000000000D / avg : 0;
+        }
+        return tps;
+    }
+
+    /**
+     * Returns the average milliseconds spent per tick over the last 1s, 1m and 5m.
+     * @return double[] {1s, 1m, 5m}
+     */
+    public double[] getMillisPerTick(){
+        double[] mspt = new double[durations.length];
+        for(int i = 0; i < durations.length; i++){
+            mspt[i] = durations[i].getAverage() / 1000000D;
+        }
+        return mspt;
+    }
+
+    /**
+     * Returns how long the last tick took to execute, in milliseconds.
+     * @return double
+     */
+    public double getLastTickMillis(){
+        return lastTickNanos / 1000000D;
+    }
+
+    /**
+     * Returns the amount of ticks executed since the server started.
+     * @return long
+     */
+    public long getTickCount(){
+        return ticks;
+    }
+}